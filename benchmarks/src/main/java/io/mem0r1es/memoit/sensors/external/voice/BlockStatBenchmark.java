@@ -0,0 +1,89 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.BandsEnergyMethod;
+import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
+import io.mem0r1es.memoit.sensors.external.voice.util.FrameFeatures;
+import io.mem0r1es.memoit.sensors.external.voice.util.SeriesStat;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+
+/**
+ * Per-block cost of accumulating the frame features, and separately of computing the block statistics.
+ * The features are extracted once from a synthetic signal beforehand. For {@link #build(Filled)},
+ * a builder is filled before each invocation, outside of the measurement.
+ *
+ * @author Cyriaque Brousse
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockStatBenchmark {
+
+  /** Block duration (s) */
+  @Param({"3", "60"})
+  public int seconds;
+
+  @Param({"EXACT", "STREAMING"})
+  public SeriesStat.Mode mode;
+
+  private FrameFeatures[] frames;
+
+  @Setup
+  public void setup() {
+    final float[] samples = SyntheticSignals.generate(SyntheticSignals.Kind.VOICE, seconds + 1);
+    final FrameAnalyzer analyzer = new FrameAnalyzer(BandsEnergyMethod.FILTER_BANK);
+    final float[] frame = new float[FRAME_SIZE];
+
+    frames = new FrameFeatures[SlidingWindowProcessor.secondsToFrames(seconds)];
+    for (int i = 0; i < frames.length; i++) {
+      System.arraycopy(samples, i * FRAME_SIZE, frame, 0, FRAME_SIZE);
+      frames[i] = new FrameFeatures();
+      analyzer.analyze(frame, frames[i]);
+    }
+  }
+
+  /**
+   * Builder holding all the frames of a block, refilled before each invocation
+   */
+  @State(Scope.Thread)
+  public static class Filled {
+    private BlockStat.Builder builder;
+
+    @Setup(Level.Invocation)
+    public void fill(BlockStatBenchmark benchmark) {
+      builder = benchmark.addFrames();
+    }
+  }
+
+  @Benchmark
+  public BlockStat.Builder addFrames() {
+    final BlockStat.Builder builder = new BlockStat.Builder(0, frames.length, mode);
+    for (FrameFeatures frame : frames) {
+      builder.addFrame(frame);
+    }
+    return builder;
+  }
+
+  @Benchmark
+  public BlockStat build(Filled filled) {
+    return filled.builder.build();
+  }
+}
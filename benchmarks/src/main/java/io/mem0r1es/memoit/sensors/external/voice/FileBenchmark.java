@@ -0,0 +1,60 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
+
+/**
+ * End-to-end cost of extracting the features of a synthetic voice file.
+ * Must be run from the root of the repository, where {@code tones.csv} lies.
+ *
+ * @author Cyriaque Brousse
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileBenchmark {
+
+  @Param({"TONE", "NOISE", "VOICE"})
+  public SyntheticSignals.Kind signal;
+
+  /** File duration (s) */
+  @Param({"10"})
+  public int seconds;
+
+  private File file;
+
+  @Setup
+  public void setup() throws Exception {
+    file = File.createTempFile("synthetic_" + signal.name().toLowerCase(), ".wav");
+    SyntheticSignals.writeWav(SyntheticSignals.generate(signal, seconds), file);
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public List<BlockStat> extract() throws Exception {
+    return CallRecorder.extract(file);
+  }
+}
@@ -0,0 +1,147 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.BandsEnergyMethod;
+import io.mem0r1es.memoit.sensors.external.voice.util.BandFilterBank;
+import io.mem0r1es.memoit.sensors.external.voice.util.FrameFeatures;
+import io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline;
+import io.mem0r1es.memoit.sensors.external.voice.util.Pair;
+
+import static be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm.FFT_YIN;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Per-frame cost of each feature extraction stage
+ *
+ * @author Cyriaque Brousse
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameBenchmark {
+
+  /** Number of frames of a batch */
+  private static final int BATCH_SIZE = 64;
+
+  @Param({"TONE", "NOISE", "VOICE"})
+  public SyntheticSignals.Kind signal;
+
+  private float[] frame;
+  private final float[] mfcc = new float[MfccPipeline.NUM_CEPSTRUM_COEF];
+
+  /** Consecutive frames, for the batch MFCC computation */
+  private float[][] batch;
+  private float[][] batchMfccs;
+
+  private final MfccPipeline mfccPipeline = new MfccPipeline();
+  private final PitchDetector pitchDetector = FFT_YIN.getDetector(SAMPLING_RATE, FRAME_SIZE);
+  private final BandFilterBank bandFilterBank = new BandFilterBank(FREQUENCY_BANDS, SAMPLING_RATE, BlockProcessor.WINDOW);
+  private final float[] bandsEnergy = new float[FREQUENCY_BANDS.size()];
+  private float[] spectrum;
+
+  private FrameAnalyzer filtersAnalyzer;
+  private FrameAnalyzer filterBankAnalyzer;
+  private FrameAnalyzer spectrumAnalyzer;
+  private final FrameFeatures features = new FrameFeatures();
+
+  @Setup
+  public void setup() {
+    // a frame from the middle of the signal
+    final float[] samples = SyntheticSignals.generate(signal, 1.0);
+    frame = new float[FRAME_SIZE];
+    System.arraycopy(samples, samples.length / 2, frame, 0, FRAME_SIZE);
+
+    batch = new float[BATCH_SIZE][FRAME_SIZE];
+    batchMfccs = new float[BATCH_SIZE][MfccPipeline.NUM_CEPSTRUM_COEF];
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      System.arraycopy(samples, i * FRAME_SIZE, batch[i], 0, FRAME_SIZE);
+    }
+
+    mfccPipeline.process(frame);
+    spectrum = mfccPipeline.getMagnitudeSpectrum().clone();
+
+    filtersAnalyzer = new FrameAnalyzer(BandsEnergyMethod.FILTERS);
+    filterBankAnalyzer = new FrameAnalyzer(BandsEnergyMethod.FILTER_BANK);
+    spectrumAnalyzer = new FrameAnalyzer(BandsEnergyMethod.SPECTRUM);
+  }
+
+  @Benchmark
+  public float[] mfcc() {
+    mfccPipeline.process(frame, mfcc);
+    return mfcc;
+  }
+
+  /** Per-batch cost: divide by {@link #BATCH_SIZE} for the per-frame cost */
+  @Benchmark
+  public float[][] mfccBatch() {
+    mfccPipeline.processBatch(batch, batchMfccs);
+    return batchMfccs;
+  }
+
+  @Benchmark
+  public double smoothedEnergy() {
+    return BlockProcessor.smoothedEnergy(frame);
+  }
+
+  @Benchmark
+  public List<Pair<Float, Float>> bandsEnergyFilters() {
+    return FrameAnalyzer.computeBandsEnergy(frame, FREQUENCY_BANDS);
+  }
+
+  @Benchmark
+  public float[] bandsEnergyFilterBank() {
+    bandFilterBank.filterEnergies(frame, bandsEnergy);
+    return bandsEnergy;
+  }
+
+  @Benchmark
+  public float[] bandsEnergySpectrum() {
+    bandFilterBank.spectrumEnergies(spectrum, bandsEnergy);
+    return bandsEnergy;
+  }
+
+  @Benchmark
+  public PitchDetectionResult pitchFftYin() {
+    return pitchDetector.getPitch(frame);
+  }
+
+  @Benchmark
+  public void analyzeFilters(Blackhole blackhole) {
+    filtersAnalyzer.analyze(frame, features);
+    blackhole.consume(features);
+  }
+
+  @Benchmark
+  public void analyzeFilterBank(Blackhole blackhole) {
+    filterBankAnalyzer.analyze(frame, features);
+    blackhole.consume(features);
+  }
+
+  @Benchmark
+  public void analyzeSpectrum(Blackhole blackhole) {
+    spectrumAnalyzer.analyze(frame, features);
+    blackhole.consume(features);
+  }
+}
@@ -0,0 +1,116 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.BandsEnergyMethod;
+import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
+import io.mem0r1es.memoit.sensors.external.voice.util.ColumnarFeatureSink;
+import io.mem0r1es.memoit.sensors.external.voice.util.CsvFeatureSink;
+import io.mem0r1es.memoit.sensors.external.voice.util.FeatureSink;
+import io.mem0r1es.memoit.sensors.external.voice.util.FrameFeatures;
+import io.mem0r1es.memoit.sensors.external.voice.util.Pair;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+
+/**
+ * Cost of writing blocks through each feature sink, to a stream that discards its input.
+ * The blocks are computed once from a synthetic signal beforehand.
+ *
+ * @author Cyriaque Brousse
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SinkBenchmark {
+
+  private static final String FILE_NAME = "benchmark.wav";
+
+  @Param({"csv", "columnar"})
+  public String format;
+
+  /** Number of blocks written */
+  @Param({"1000"})
+  public int blocks;
+
+  private final List<BlockStat> stats = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    final float[] samples = SyntheticSignals.generate(SyntheticSignals.Kind.VOICE, 4);
+    final FrameAnalyzer analyzer = new FrameAnalyzer(BandsEnergyMethod.FILTER_BANK);
+    final float[] frame = new float[FRAME_SIZE];
+
+    final BlockStat.Builder builder = new BlockStat.Builder(0, SlidingWindowProcessor.secondsToFrames(3));
+    final FrameFeatures features = new FrameFeatures();
+    for (int i = 0; i < builder.BLOCK_SIZE; i++) {
+      System.arraycopy(samples, i * FRAME_SIZE, frame, 0, FRAME_SIZE);
+      analyzer.analyze(frame, features);
+      builder.addFrame(features);
+    }
+
+    final BlockStat stat = builder.build();
+    for (int i = 0; i < blocks; i++) {
+      stats.add(stat);
+    }
+
+    CallRecorder.EMOTION_MAPPER.put("benchmark", Pair.create("neutral", "neutral"));
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    try (FeatureSink sink = newSink()) {
+      sink.write(FILE_NAME, stats);
+    }
+  }
+
+  private FeatureSink newSink() throws IOException {
+    if (format.equals("csv")) {
+      return new CsvFeatureSink(new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+      }), true, true);
+    }
+
+    return new ColumnarFeatureSink(new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) {
+        final int written = src.remaining();
+        src.position(src.limit());
+        return written;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() { }
+    });
+  }
+}
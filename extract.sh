@@ -9,22 +9,16 @@ fi
 # var def
 jar=$1
 path=$2
-files=($2/*.wav)
 out=$3
-left=`ls $path | wc -l`
+left=`ls $path/*.wav | wc -l`
 echo "$left files to process"
 
 # clear any previous file
-rm $out
+rm -f $out
 
-begin=0
-slice=100
-while [ $left -gt 0 ]; do
-    block=${files[@]:$begin:$slice}
-    java -jar $jar $block >> $out
-    left=`expr $left - $slice`
-    echo "$left files left"
-    begin=`expr $begin + $slice`
-done
+# all files are processed by a single JVM, in parallel
+# unchanged files are served from the feature cache
+cache=${VOICE_CACHE:-.voice-cache}
+java -Dvoice.cache=$cache -jar $jar $path > $out
 
 exit
\ No newline at end of file
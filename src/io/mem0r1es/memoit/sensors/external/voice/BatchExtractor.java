@@ -0,0 +1,134 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
+import io.mem0r1es.memoit.sensors.external.voice.util.FeatureSink;
+import io.mem0r1es.memoit.sensors.external.voice.util.Pair;
+
+import static io.mem0r1es.memoit.sensors.external.voice.util.FileUtils.foreachNonEmptyLine;
+
+/**
+ * Runs the extraction pipeline on many voice files in parallel.
+ * Files are fanned out to a fixed pool of workers, and their blocks are written
+ * in the order of the input files, so that the output does not depend on scheduling.
+ *
+ * @author Cyriaque Brousse
+ */
+public class BatchExtractor {
+
+  /** Extension of the voice files picked up in directories */
+  private static final String VOICE_FILE_EXTENSION = ".wav";
+
+  /** Maximal number of files being processed or waiting to be written, per worker */
+  private static final int PENDING_PER_WORKER = 2;
+
+  private final int threads;
+
+  public BatchExtractor(int threads) {
+    Preconditions.checkArgument(threads >= 1, "at least one worker thread is needed");
+
+    this.threads = threads;
+  }
+
+  /**
+   * Extracts the features of all the given files
+   *
+   * @param files voice files to process
+   * @param sink receives the blocks of each file, in the order of {@code files}
+   */
+  public void run(List<File> files, FeatureSink sink) throws InterruptedException, IOException {
+    final ExecutorService workers = Executors.newFixedThreadPool(threads);
+    final Deque<Pair<File, Future<List<BlockStat>>>> pending = new ArrayDeque<>();
+
+    try {
+      for (File file : files) {
+        // bound the number of buffered results
+        if (pending.size() >= threads * PENDING_PER_WORKER) {
+          write(pending.poll(), sink);
+        }
+        pending.add(Pair.create(file, workers.submit(() -> extract(file))));
+      }
+
+      while (!pending.isEmpty()) {
+        write(pending.poll(), sink);
+      }
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Expands the arguments into the list of voice files to process
+   *
+   * @param args voice files, directories, or manifests prefixed by {@code @}
+   * @return the voice files, directories being expanded in name order
+   */
+  public static List<File> listFiles(String... args) throws IOException {
+    final List<File> files = new ArrayList<>();
+
+    for (String arg : args) {
+      if (arg.startsWith("@")) {
+        foreachNonEmptyLine(arg.substring(1), line -> files.add(new File(line)));
+        continue;
+      }
+
+      final File file = new File(arg);
+      if (file.isDirectory()) {
+        final File[] voiceFiles = file.listFiles((dir, name) -> name.endsWith(VOICE_FILE_EXTENSION));
+        Preconditions.checkNotNull(voiceFiles, "could not list directory " + arg);
+        Arrays.sort(voiceFiles);
+        files.addAll(Arrays.asList(voiceFiles));
+      } else {
+        files.add(file);
+      }
+    }
+
+    return files;
+  }
+
+  /**
+   * Runs the pipeline on one file
+   *
+   * @return the blocks of the file, or {@code null} if the file could not be processed
+   */
+  private static List<BlockStat> extract(File file) {
+    System.err.println("### Processing file " + file + " ###");
+
+    try {
+      return CallRecorder.extract(file);
+    } catch (Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Waits for the blocks of a file, and writes them unless the file could not be processed
+   */
+  private static void write(Pair<File, Future<List<BlockStat>>> result, FeatureSink sink)
+     throws InterruptedException, IOException {
+    final List<BlockStat> blocks;
+    try {
+      blocks = result.second.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+
+    if (blocks != null) {
+      sink.write(result.first.getName(), blocks);
+    }
+  }
+}
@@ -7,23 +7,19 @@ import com.google.common.collect.ImmutableList;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 
 import be.tarsos.dsp.AudioEvent;
 import be.tarsos.dsp.AudioProcessor;
-import be.tarsos.dsp.pitch.PitchDetectionResult;
-import be.tarsos.dsp.pitch.PitchDetector;
 import be.tarsos.dsp.util.fft.HammingWindow;
 import be.tarsos.dsp.util.fft.WindowFunction;
-import io.mem0r1es.memoit.sensors.external.voice.util.BandPassFilter;
 import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
-import io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline;
+import io.mem0r1es.memoit.sensors.external.voice.util.FrameFeatures;
+import io.mem0r1es.memoit.sensors.external.voice.util.Metrics;
 import io.mem0r1es.memoit.sensors.external.voice.util.Pair;
+import io.mem0r1es.memoit.sensors.external.voice.util.SeriesStat;
 
-import static be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm.FFT_YIN;
 import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
-import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
 
 /**
  * Processes the audio input by dividing it into blocks of a fixed size.
@@ -36,14 +32,14 @@ public class BlockProcessor implements AudioProcessor {
   /* **********************************
               External utilities
      ********************************** */
-  /** Detector for the pitch */
-  private static final PitchDetector PITCH_DETECTOR = FFT_YIN.getDetector(SAMPLING_RATE, FRAME_SIZE);
-
   /** Window function. Gives more weight to the center of a frame. */
   public static final WindowFunction WINDOW_FUNCTION = new HammingWindow();
 
-  /** Pipeline used to compute MFCCs */
-  private static final MfccPipeline MFCC_PIPELINE = new MfccPipeline();
+  /** Coefficients of the window function for a whole frame */
+  static final float[] WINDOW = windowCoefficients(FRAME_SIZE);
+
+  /** Extracts the features of each frame */
+  private final FrameAnalyzer FRAME_ANALYZER;
 
   /* **********************************
              Processing constants
@@ -57,14 +53,11 @@ public class BlockProcessor implements AudioProcessor {
   /** Last non-silent frame. Determined in advance. */
   private final int LAST_SPOKEN_FRAME;
 
-  /** Name of the file currently being processed */
-  private final String FILE_NAME;
-
   /** Lower bound of allowed pitch interval (Hz) */
-  private static final int MIN_PITCH = 40;
+  public static final int MIN_PITCH = 40;
 
   /** Upper bound of allowed pitch interval (Hz) */
-  private static final int MAX_PITCH = 640;
+  public static final int MAX_PITCH = 640;
 
   /** Pairs of frequency bands (band_center,band_width) to extract energy from (Hz) */
   public static final ImmutableList<Pair<Float, Float>> FREQUENCY_BANDS =
@@ -72,6 +65,26 @@ public class BlockProcessor implements AudioProcessor {
      initBands(0, 101, 204, 309, 417, 531, 651, 781, 922, 1079, 1255, 1456,
                1691, 1968, 2302, 2711, 3212, 3822, 4554, 5412, 6414, 7617);
 
+  /** Accumulation mode of the block statistics */
+  private final SeriesStat.Mode STATS_MODE;
+
+  /**
+   * Methods to extract the energy of each frequency band
+   */
+  public enum BandsEnergyMethod {
+    /** New band pass filters for each frame (original implementation) */
+    FILTERS,
+    /** Preallocated filter bank. Same values as {@link #FILTERS}, without per-frame allocation */
+    FILTER_BANK,
+    /**
+     * Sums of the MFCC magnitude spectrum bins. A coarse approximation of {@link #FILTERS}: a tone at the center
+     * of a band gets about the same energy, but the band pass filters overlap where the bins do not, so a broadband
+     * frame gets between a fifth and three quarters of the total energy. Not interchangeable with a model trained
+     * on {@link #FILTERS}.
+     */
+    SPECTRUM
+  }
+
   /* **********************************
                 Accumulators
      ********************************** */
@@ -84,10 +97,17 @@ public class BlockProcessor implements AudioProcessor {
   /** Accumulator for values for one block of frames, on which stats are then computed */
   private BlockStat.Builder currentBlockStatBuilder;
 
+  /** Features of the current frame */
+  private final FrameFeatures frameFeatures = new FrameFeatures();
+
   /* **********************************
                 Constructor
      ********************************** */
-  public BlockProcessor(int[] firstLastSpokenFrames, String fileName) {
+  public BlockProcessor(int[] firstLastSpokenFrames) {
+    this(firstLastSpokenFrames, BandsEnergyMethod.FILTERS, SeriesStat.Mode.EXACT);
+  }
+
+  public BlockProcessor(int[] firstLastSpokenFrames, BandsEnergyMethod bandsEnergyMethod, SeriesStat.Mode statsMode) {
     Preconditions.checkArgument(firstLastSpokenFrames.length == 2,
        "first-last spoken frame buffer must be of length 2");
 
@@ -95,9 +115,10 @@ public class BlockProcessor implements AudioProcessor {
     LAST_SPOKEN_FRAME  = firstLastSpokenFrames[1];
     BLOCK_SIZE = LAST_SPOKEN_FRAME - FIRST_SPOKEN_FRAME;
 
-    FILE_NAME = fileName;
+    FRAME_ANALYZER = new FrameAnalyzer(bandsEnergyMethod);
+    STATS_MODE = statsMode;
 
-    this.currentBlockStatBuilder = new BlockStat.Builder(currentFrameNumber, BLOCK_SIZE);
+    this.currentBlockStatBuilder = new BlockStat.Builder(currentFrameNumber, BLOCK_SIZE, STATS_MODE);
   }
 
   /* **********************************
@@ -119,35 +140,19 @@ public class BlockProcessor implements AudioProcessor {
       return false;
     }
 
-    // pitch extraction
-    final PitchDetectionResult pitchResult = PITCH_DETECTOR.getPitch(frame);
-    if (pitchResult.isPitched()) {
-      float pitch = pitchResult.getPitch();
-      if (pitch >= MIN_PITCH && pitch <= MAX_PITCH) {
-        currentBlockStatBuilder.pitches.add(pitch);
-      }
-    }
-
-    // energy extraction
-    currentBlockStatBuilder.energies.add((float) smoothedEnergy(frame));
-
-    // frequency bands energy extraction
-    final List<Pair<Float, Float>> bandsEnergy = computeBandsEnergy(frame, FREQUENCY_BANDS);
-    for (Pair<Float, Float> bandEnergy : bandsEnergy) {
-      // retrieve list of band energies, and add new value to it
-      currentBlockStatBuilder.bandsEnergies.get(bandEnergy.first).add(bandEnergy.second);
-    }
-
-    // MFCC processing
-    currentBlockStatBuilder.mfccs.add(MFCC_PIPELINE.process(frame));
+    // features extraction
+    final long start = Metrics.start();
+    FRAME_ANALYZER.analyze(frame, frameFeatures);
+    Metrics.stop(Metrics.FRAME_NANOS, start);
+    Metrics.increment(Metrics.FRAMES, 1);
+    currentBlockStatBuilder.addFrame(frameFeatures);
 
     // handle going to the next frame
     currentFrameNumber++;
     if (currentFrameNumber % BLOCK_SIZE == 0) {
       // get ready for the next block
       stats.add(currentBlockStatBuilder.build());
-      stats.get(stats.size() - 1).printWithEmotion(FILE_NAME);
-      currentBlockStatBuilder = new BlockStat.Builder(currentFrameNumber, BLOCK_SIZE);
+      currentBlockStatBuilder = new BlockStat.Builder(currentFrameNumber, BLOCK_SIZE, STATS_MODE);
     }
 
     // never break the chain
@@ -157,48 +162,40 @@ public class BlockProcessor implements AudioProcessor {
   @Override
   public void processingFinished() { }
 
+  /**
+   * @return the statistics of the blocks completed so far
+   */
+  public List<BlockStat> getStats() {
+    return stats;
+  }
+
   /**
    * Calculates the local (linear) energy of an audio buffer.
-   * Creates a copy of the frame and applies the window function on it before further processing.
+   * Applies the window function on the samples before further processing; the frame is left untouched.
    *
    * @param frame the audio frame
    * @return The local (linear) energy of an audio buffer.
    */
   public static double smoothedEnergy(final float[] frame) {
-    final float[] windowedFrame = Arrays.copyOf(frame, frame.length);
-    WINDOW_FUNCTION.apply(windowedFrame);
+    final float[] window = frame.length == WINDOW.length ? WINDOW : windowCoefficients(frame.length);
 
     double power = 0.0;
-    for (float sample : windowedFrame) {
+    for (int i = 0; i < frame.length; i++) {
+      final float sample = frame[i] * window[i];
       power += sample * sample;
     }
     return power;
   }
 
   /**
-   * Compute the energy for each specified band of the frame
-   *
-   * @param frame frame to extract the energies on
-   * @param bands pairs of (band_center,band_width)
-   * @return pairs of (band_center,band_energy)
+   * @param length frame size
+   * @return the coefficients of the window function for a frame of the given size
    */
-  private List<Pair<Float, Float>> computeBandsEnergy(float[] frame, Collection<Pair<Float, Float>> bands) {
-    final List<Pair<Float, Float>> bandsEnergy = new ArrayList<>(); // (center,energy)
-
-    float[] frameFiltered = new float[frame.length];
-    for (Pair<Float, Float> band : bands) {
-      System.arraycopy(frame, 0, frameFiltered, 0, frame.length);
-
-      // filter to keep only the wanted band
-      final BandPassFilter bandpassFilter = new BandPassFilter(band.first, band.second, SAMPLING_RATE);
-      bandpassFilter.process(frameFiltered);
-
-      // compute energy on filtered frame
-      final float energy = (float) smoothedEnergy(frameFiltered);
-      bandsEnergy.add(Pair.create(band.first, energy));
-    }
-
-    return bandsEnergy;
+  private static float[] windowCoefficients(int length) {
+    final float[] window = new float[length];
+    Arrays.fill(window, 1f);
+    WINDOW_FUNCTION.apply(window);
+    return window;
   }
 
   /**
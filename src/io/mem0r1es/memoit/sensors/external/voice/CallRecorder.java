@@ -1,17 +1,28 @@
 package io.mem0r1es.memoit.sensors.external.voice;
 
 import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
 
 import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioProcessor;
 import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
 import be.tarsos.dsp.pitch.PitchProcessor;
 import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
+import io.mem0r1es.memoit.sensors.external.voice.util.ColumnarFeatureSink;
+import io.mem0r1es.memoit.sensors.external.voice.util.CsvFeatureSink;
 import io.mem0r1es.memoit.sensors.external.voice.util.EmotionMapper;
-import io.mem0r1es.memoit.sensors.external.voice.util.PitchShiftingExample;
+import io.mem0r1es.memoit.sensors.external.voice.util.FeatureCache;
+import io.mem0r1es.memoit.sensors.external.voice.util.FeatureSink;
+import io.mem0r1es.memoit.sensors.external.voice.util.Metrics;
+import io.mem0r1es.memoit.sensors.external.voice.util.SampleBuffer;
+import io.mem0r1es.memoit.sensors.external.voice.util.SeriesStat;
 import io.mem0r1es.memoit.sensors.external.voice.util.Tones;
 
 import static be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm.FFT_YIN;
@@ -28,76 +39,209 @@ public class CallRecorder {
   public static final EmotionMapper EMOTION_MAPPER = new EmotionMapper();
   public static final Tones TONES = new Tones();
 
-  public static void main(String[] args) {
-    Preconditions.checkArgument(args.length >= 1, "not enough arguments");
+  /** Method used to extract the energy of the frequency bands. Can be set with {@code -Dvoice.bands=METHOD} */
+  public static final BlockProcessor.BandsEnergyMethod BANDS_ENERGY_METHOD =
+     BlockProcessor.BandsEnergyMethod.valueOf(System.getProperty("voice.bands", "FILTERS"));
+
+  /** Accumulation mode of the block statistics. Can be set with {@code -Dvoice.stats=MODE} */
+  public static final SeriesStat.Mode STATS_MODE = SeriesStat.Mode.valueOf(System.getProperty("voice.stats", "EXACT"));
+
+  /**
+   * Sliding windows {@code length:hop} (s), e.g. {@code 3:1}. Can be set with {@code -Dvoice.window=LENGTH:HOP}.
+   * If set, one row is written per window instead of one per file.
+   */
+  public static final String SLIDING_WINDOW = System.getProperty("voice.window");
 
-    for (String arg : args) {
-      System.err.println("### Processing file " + arg + " ###");
+  /**
+   * Output format, {@code csv} (default) or {@code columnar} (see {@link ColumnarFeatureSink}, one row per block).
+   * Can be set with {@code -Dvoice.output=FORMAT}. The CSV header row is enabled with {@code -Dvoice.header=true}.
+   */
+  public static final String OUTPUT_FORMAT = System.getProperty("voice.output", "csv");
 
-      final File source = new File(arg);
-      final File target = new File(arg + "_temp.wav");
-      final int[] firstLastSpokenFrames = new int[2];
+  /** Cache of the extraction results, enabled with {@code -Dvoice.cache=DIR}, see {@link FeatureCache#fromProperties()} */
+  public static final FeatureCache CACHE = FeatureCache.fromProperties();
 
-      try {
-        shiftPitch(source, target);
-        newPreprocessor(source, firstLastSpokenFrames).run();
-        newDispatcher(target, firstLastSpokenFrames).run();
-      } catch (Exception e) {
-        e.printStackTrace();
-        continue;
-      }
+  /**
+   * Arguments are voice files, directories (all their .wav files are processed)
+   * or manifests prefixed by {@code @} (one voice file per line).
+   * The number of worker threads can be set with {@code -Dvoice.threads=N}.
+   */
+  public static void main(String[] args) throws Exception {
+    Preconditions.checkArgument(args.length >= 1, "not enough arguments");
 
-      target.deleteOnExit();
+    final int threads = Integer.getInteger("voice.threads", Runtime.getRuntime().availableProcessors());
+    final long start = Metrics.start();
+    try (FeatureSink sink = newSink(System.out)) {
+      new BatchExtractor(threads).run(BatchExtractor.listFiles(args), sink);
+    }
 
-      System.out.println();
+    if (CACHE != null) {
+      CACHE.evict();
     }
+    Metrics.finish(Metrics.start() - start);
   }
 
-  private static void shiftPitch(File file, File target) throws Exception {
-    // get average pitch of source file
-    final List<Float> pitches = new ArrayList<>();
-    newPitchDetector(file, pitches).run();
-    final float pitchMean = (float) BlockStat.Builder.getStat(pitches).getMean();
+  /**
+   * @param out stream the features are written to
+   * @return the sink of the configured output format
+   */
+  private static FeatureSink newSink(PrintStream out) throws IOException {
+    switch (OUTPUT_FORMAT) {
+      case "csv":
+        return new CsvFeatureSink(out, Boolean.getBoolean("voice.header"), SLIDING_WINDOW != null);
+      case "columnar":
+        return new ColumnarFeatureSink(Channels.newChannel(out));
+      default:
+        throw new IllegalArgumentException("unknown output format " + OUTPUT_FORMAT);
+    }
+  }
 
-    // differences of semitones to the reference
-    final int numSemitones = TONES.semitonesDifferenceCount(pitchMean);
+  /**
+   * Runs the whole extraction pipeline on a single voice file.
+   * Block statistics are served from the {@link #CACHE} if it is enabled; windows are always computed.
+   *
+   * @param source the voice file
+   * @return the statistics of its blocks, or of its windows if {@link #SLIDING_WINDOW} is set
+   */
+  public static List<BlockStat> extract(File source) throws Exception {
+    final long start = Metrics.start();
+    final long allocated = Metrics.allocatedBytes();
+
+    final List<BlockStat> stats;
+    if (SLIDING_WINDOW != null) {
+      stats = extractWindows(source);
+    } else if (CACHE != null) {
+      final HashCode content = CACHE.hash(source);
+      stats = CACHE.get(content, () -> extractBlocks(source, content));
+    } else {
+      stats = extractBlocks(source, null);
+    }
 
-    // map the source file to the target file
-    PitchShiftingExample.startCli(file.getAbsolutePath(), target.getAbsolutePath(), numSemitones * 100);
+    Metrics.stop(Metrics.FILE_NANOS, start);
+    Metrics.increment(Metrics.FILES, 1);
+    if (allocated >= 0) {
+      Metrics.record(Metrics.FILE_ALLOCATED_BYTES, Metrics.allocatedBytes() - allocated);
+    }
+    return stats;
   }
 
-  private static AudioDispatcher newPitchDetector(File file, List<Float> pitches) throws Exception {
-    final AudioDispatcher dispatcher = AudioDispatcherFactory.fromFile(file, FRAME_SIZE, FRAME_OVERLAP);
-    dispatcher.addAudioProcessor(
-       new PitchProcessor(FFT_YIN,
-          SAMPLING_RATE,
-          FRAME_SIZE,
-          (result, event) -> {
-            if (result.isPitched()) {
-              float pitch = result.getPitch();
-              if (pitch >= 40 && pitch <= 640) {
-                pitches.add(pitch);
-              }
-            }
-          }
-       )
+  /**
+   * Runs the block pipeline on a single voice file.
+   * The results of the first pass are served from the {@link #CACHE} if it is enabled.
+   *
+   * @param source the voice file
+   * @param content hash of its content, {@code null} if the cache is disabled
+   * @return the statistics of its blocks
+   */
+  private static List<BlockStat> extractBlocks(File source, HashCode content) throws Exception {
+    final SampleBuffer samples = decode(source);
+
+    // single pass on the source: mean pitch and silence bounds
+    long start = Metrics.start();
+    final FeatureCache.FirstPass firstPass = content != null
+       ? CACHE.getFirstPass(content, () -> firstPass(samples))
+       : firstPass(samples);
+    Metrics.stop(Metrics.FIRST_PASS_NANOS, start);
+
+    // second pass: pitch normalisation, feeding the block processor
+    start = Metrics.start();
+    final BlockProcessor blocks =
+       new BlockProcessor(firstPass.firstLastSpokenFrames, BANDS_ENERGY_METHOD, STATS_MODE);
+    final PitchShifter shifter = newPitchShifter(firstPass.pitchMean, blocks);
+    samples.dispatch(shifter.getInputBufferSize(), shifter.getOverlap(), shifter);
+    Metrics.stop(Metrics.SECOND_PASS_NANOS, start);
+
+    return blocks.getStats();
+  }
+
+  /**
+   * @return the mean pitch and the silence bounds of the samples
+   */
+  private static FeatureCache.FirstPass firstPass(SampleBuffer samples) {
+    final int[] firstLastSpokenFrames = new int[2];
+    final List<Float> pitches = new ArrayList<>();
+    samples.dispatch(newPitchDetector(pitches), new Preprocessor(firstLastSpokenFrames));
+    return new FeatureCache.FirstPass(meanPitch(pitches), firstLastSpokenFrames);
+  }
+
+  /**
+   * Runs the sliding windows pipeline on a single voice file, streamed from the disk.
+   * Silence is trimmed and the pitch normalised online (see {@link PitchTracker}), so that each window
+   * is handed over as soon as its last frame is decoded, without a preliminary pass.
+   *
+   * @param source the voice file
+   * @return the statistics of its windows, in order
+   */
+  private static List<BlockStat> extractWindows(File source) throws Exception {
+    final String[] lengthHop = SLIDING_WINDOW.split(":");
+    Preconditions.checkArgument(lengthHop.length == 2, "sliding window must be given as length:hop");
+    final int windowSize = SlidingWindowProcessor.secondsToFrames(Double.parseDouble(lengthHop[0]));
+    final int hopSize = SlidingWindowProcessor.secondsToFrames(Double.parseDouble(lengthHop[1]));
+
+    final List<BlockStat> stats = new ArrayList<>();
+    final SlidingWindowProcessor windows = new SlidingWindowProcessor(windowSize, hopSize,
+       BANDS_ENERGY_METHOD, STATS_MODE,
+       (window, latencyNanos) -> {
+         stats.add(window);
+         Metrics.record(Metrics.WINDOW_LATENCY_NANOS, latencyNanos);
+       }
     );
-    return dispatcher;
+
+    // not shifted until the pitch tracker has warmed up
+    final PitchShifter shifter = new PitchShifter(0, windows);
+    final PitchTracker pitch = new PitchTracker(shifter, hopSize);
+
+    final long start = Metrics.start();
+    final AudioDispatcher dispatcher =
+       AudioDispatcherFactory.fromFile(source, shifter.getInputBufferSize(), shifter.getOverlap());
+    shifter.setDispatcher(dispatcher);
+    dispatcher.addAudioProcessor(pitch);
+    dispatcher.addAudioProcessor(shifter);
+    dispatcher.run();
+    Metrics.stop(Metrics.SECOND_PASS_NANOS, start);
+
+    Metrics.increment(Metrics.BYTES_DECODED, source.length());
+    Metrics.increment(Metrics.SAMPLES_DECODED, pitch.getSamples());
+
+    return stats;
   }
 
-  private static AudioDispatcher newPreprocessor(File file, int[] output) throws Exception {
-    final AudioDispatcher dispatcher = AudioDispatcherFactory.fromFile(file, FRAME_SIZE, FRAME_OVERLAP);
-    dispatcher.addAudioProcessor(new Preprocessor(output));
-    return dispatcher;
+  private static SampleBuffer decode(File source) throws Exception {
+    final long start = Metrics.start();
+    final SampleBuffer samples = SampleBuffer.decode(source);
+    Metrics.stop(Metrics.DECODE_NANOS, start);
+    Metrics.increment(Metrics.BYTES_DECODED, source.length());
+    Metrics.increment(Metrics.SAMPLES_DECODED, samples.length());
+    return samples;
   }
 
   /**
-   * Factory method for dispatcher creation
+   * @return the average pitch of a source file
    */
-  private static AudioDispatcher newDispatcher(File file, int[] firstLastSpokenFrames) throws Exception {
-    final AudioDispatcher dispatcher = AudioDispatcherFactory.fromFile(file, FRAME_SIZE, FRAME_OVERLAP);
-    dispatcher.addAudioProcessor(new BlockProcessor(firstLastSpokenFrames, file.getName()));
-    return dispatcher;
+  private static float meanPitch(List<Float> pitches) {
+    return (float) BlockStat.Builder.getStat(pitches).getMean();
+  }
+
+  private static PitchShifter newPitchShifter(float pitchMean, AudioProcessor next) {
+    // differences of semitones to the reference
+    final int numSemitones = TONES.semitonesDifferenceCount(pitchMean);
+
+    return new PitchShifter(numSemitones * 100, next);
+  }
+
+  private static AudioProcessor newPitchDetector(List<Float> pitches) {
+    return new PitchProcessor(FFT_YIN,
+       SAMPLING_RATE,
+       FRAME_SIZE,
+       (result, event) -> {
+         if (result.isPitched()) {
+           float pitch = result.getPitch();
+           if (pitch >= BlockProcessor.MIN_PITCH && pitch <= BlockProcessor.MAX_PITCH) {
+             pitches.add(pitch);
+           }
+         }
+       }
+    );
   }
 
 }
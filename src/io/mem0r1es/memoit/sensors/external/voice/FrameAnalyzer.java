@@ -0,0 +1,127 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+import io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.BandsEnergyMethod;
+import io.mem0r1es.memoit.sensors.external.voice.util.BandFilterBank;
+import io.mem0r1es.memoit.sensors.external.voice.util.BandPassFilter;
+import io.mem0r1es.memoit.sensors.external.voice.util.FrameFeatures;
+import io.mem0r1es.memoit.sensors.external.voice.util.Metrics;
+import io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline;
+import io.mem0r1es.memoit.sensors.external.voice.util.Pair;
+
+import static be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm.FFT_YIN;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.MAX_PITCH;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.MIN_PITCH;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.WINDOW;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.smoothedEnergy;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Extracts the features of a single frame: pitch, energy, frequency bands energy and MFCCs.
+ * Holds stateful detectors, so an instance must not be shared between threads.
+ *
+ * @author Cyriaque Brousse
+ */
+public class FrameAnalyzer {
+
+  /** Detector for the pitch. Not shared, as it is stateful. */
+  private final PitchDetector PITCH_DETECTOR = FFT_YIN.getDetector(SAMPLING_RATE, FRAME_SIZE);
+
+  /** Pipeline used to compute MFCCs. Not shared, as it is stateful. */
+  private final MfccPipeline MFCC_PIPELINE = new MfccPipeline();
+
+  /** Filter bank extracting the energy of each frequency band */
+  private static final BandFilterBank BAND_FILTER_BANK = new BandFilterBank(FREQUENCY_BANDS, SAMPLING_RATE, WINDOW);
+
+  /** Method used to extract the energy of each frequency band */
+  private final BandsEnergyMethod BANDS_ENERGY_METHOD;
+
+  public FrameAnalyzer(BandsEnergyMethod bandsEnergyMethod) {
+    BANDS_ENERGY_METHOD = bandsEnergyMethod;
+  }
+
+  /**
+   * Extracts the features of the frame
+   *
+   * @param frame the audio frame, left untouched
+   * @param features receives the features of the frame
+   */
+  public void analyze(float[] frame, FrameFeatures features) {
+    // pitch extraction
+    long start = Metrics.start();
+    features.pitch = Float.NaN;
+    final PitchDetectionResult pitchResult = PITCH_DETECTOR.getPitch(frame);
+    if (pitchResult.isPitched()) {
+      float pitch = pitchResult.getPitch();
+      if (pitch >= MIN_PITCH && pitch <= MAX_PITCH) {
+        features.pitch = pitch;
+      }
+    }
+    Metrics.stop(Metrics.PITCH_NANOS, start);
+
+    // energy extraction
+    start = Metrics.start();
+    features.energy = (float) smoothedEnergy(frame);
+    Metrics.stop(Metrics.ENERGY_NANOS, start);
+
+    // frequency bands energy extraction
+    start = Metrics.start();
+    switch (BANDS_ENERGY_METHOD) {
+      case FILTERS:
+        final List<Pair<Float, Float>> bandsEnergyPairs = computeBandsEnergy(frame, FREQUENCY_BANDS);
+        for (int i = 0; i < features.bandsEnergy.length; i++) {
+          features.bandsEnergy[i] = bandsEnergyPairs.get(i).second;
+        }
+        break;
+      case FILTER_BANK:
+        BAND_FILTER_BANK.filterEnergies(frame, features.bandsEnergy);
+        break;
+    }
+    if (BANDS_ENERGY_METHOD != BandsEnergyMethod.SPECTRUM) {
+      Metrics.stop(Metrics.BANDS_NANOS, start);
+    }
+
+    // MFCC processing
+    MFCC_PIPELINE.process(frame, features.mfcc);
+
+    if (BANDS_ENERGY_METHOD == BandsEnergyMethod.SPECTRUM) {
+      start = Metrics.start();
+      BAND_FILTER_BANK.spectrumEnergies(MFCC_PIPELINE.getMagnitudeSpectrum(), features.bandsEnergy);
+      Metrics.stop(Metrics.BANDS_NANOS, start);
+    }
+  }
+
+  /**
+   * Compute the energy for each specified band of the frame
+   *
+   * @param frame frame to extract the energies on
+   * @param bands pairs of (band_center,band_width)
+   * @return pairs of (band_center,band_energy)
+   */
+  static List<Pair<Float, Float>> computeBandsEnergy(float[] frame, Collection<Pair<Float, Float>> bands) {
+    final List<Pair<Float, Float>> bandsEnergy = new ArrayList<>(); // (center,energy)
+
+    float[] frameFiltered = new float[frame.length];
+    for (Pair<Float, Float> band : bands) {
+      System.arraycopy(frame, 0, frameFiltered, 0, frame.length);
+
+      // filter to keep only the wanted band
+      final BandPassFilter bandpassFilter = new BandPassFilter(band.first, band.second, SAMPLING_RATE);
+      bandpassFilter.process(frameFiltered);
+
+      // compute energy on filtered frame
+      final float energy = (float) smoothedEnergy(frameFiltered);
+      bandsEnergy.add(Pair.create(band.first, energy));
+    }
+
+    return bandsEnergy;
+  }
+
+}
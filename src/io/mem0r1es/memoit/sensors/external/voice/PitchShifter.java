@@ -0,0 +1,190 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import java.util.Arrays;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.WaveformSimilarityBasedOverlapAdd;
+import be.tarsos.dsp.WaveformSimilarityBasedOverlapAdd.Parameters;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.resample.RateTransposer;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Pitch normalisation stage.
+ * Shifts the pitch of the audio input without changing its duration (time stretching followed by resampling),
+ * and feeds the shifted audio to the next stage in frames of {@link CallRecorder#FRAME_SIZE} samples.
+ * <p>
+ * This is the in-memory equivalent of writing the shifted audio to a 16 bits WAV file and reading it back,
+ * the frames being cut at the same sample offsets and the last one zero-padded alike. They only differ by
+ * the quantization of that file: the samples are truncated to 16 bits when written, and scaled back when read,
+ * which is expected to stay within {@link #TOLERANCE} per sample. Samples beyond full scale, which the resampling
+ * may yield on loud input, are not clipped by the WAV writer but wrap around in 16 bits: they are wrapped alike.
+ * {@code PitchShifterTest} compares both paths and checks that bound.
+ * <p>
+ * The input frames must be of size {@link #getInputBufferSize()} and overlap by {@link #getOverlap()} samples.
+ * The shift can be changed while streaming with {@link #setCents(int)}, provided the dispatcher feeding the shifter
+ * was given to {@link #setDispatcher(AudioDispatcher)}: the input frame size then changes after the next frame.
+ *
+ * @author Cyriaque Brousse
+ */
+public class PitchShifter implements AudioProcessor {
+
+  /** Time stretching parameters (ms): sequence, seek window and overlap lengths. TarsosDSP defaults for music. */
+  public static final int WSOLA_SEQUENCE_MS = 82;
+  public static final int WSOLA_SEEK_WINDOW_MS = 28;
+  public static final int WSOLA_OVERLAP_MS = 12;
+
+  /** Largest expected difference per sample with the WAV file round trip: two 16 bits quantization steps */
+  static final float TOLERANCE = 2f / Short.MAX_VALUE;
+
+  /** Format of the audio events handed to the next stage */
+  private static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(SAMPLING_RATE, 16, 1, true, false);
+
+  /** Time stretching, keeps the pitch */
+  private final WaveformSimilarityBasedOverlapAdd wsola;
+
+  /** Resampling, restores the original duration */
+  private final RateTransposer rateTransposer;
+
+  /** Current pitch shift (cents) */
+  private int cents;
+
+  /** Whether the shift changed, and the resampling factor is to be updated after the current frame */
+  private boolean shiftChanged = false;
+
+  /** Stage receiving the shifted frames */
+  private final AudioProcessor next;
+
+  /** Shifted frame being filled */
+  private final float[] frame = new float[FRAME_SIZE];
+
+  /** Number of samples currently in the shifted frame */
+  private int frameLength = 0;
+
+  /** Event handed to the next stage */
+  private final AudioEvent frameEvent = new AudioEvent(FORMAT);
+
+  /**
+   * Constructs the pitch shifter
+   *
+   * @param cents the pitch shift (cents), positive to go up
+   * @param next stage receiving the shifted frames
+   */
+  public PitchShifter(int cents, AudioProcessor next) {
+    final double factor = centsToFactor(cents);
+
+    this.cents = cents;
+    this.wsola = new WaveformSimilarityBasedOverlapAdd(wsolaParameters(factor));
+    this.rateTransposer = new RateTransposer(factor);
+    this.next = next;
+  }
+
+  /**
+   * @return the size of the frames expected in input
+   */
+  public int getInputBufferSize() {
+    return wsola.getInputBufferSize();
+  }
+
+  /**
+   * @return the overlap of the frames expected in input
+   */
+  public int getOverlap() {
+    return wsola.getOverlap();
+  }
+
+  /**
+   * @param dispatcher dispatcher feeding the shifter, whose frame size is adapted when the shift changes
+   */
+  public void setDispatcher(AudioDispatcher dispatcher) {
+    wsola.setDispatcher(dispatcher);
+  }
+
+  /**
+   * @return the current pitch shift (cents)
+   */
+  public int getCents() {
+    return cents;
+  }
+
+  /**
+   * Changes the pitch shift, after the next input frame. Requires {@link #setDispatcher(AudioDispatcher)}.
+   *
+   * @param cents the pitch shift (cents), positive to go up
+   */
+  public void setCents(int cents) {
+    if (cents == this.cents) {
+      return;
+    }
+
+    // the time stretching applies its new parameters after its next frame, so must the resampling
+    wsola.setParameters(wsolaParameters(centsToFactor(cents)));
+    this.cents = cents;
+    this.shiftChanged = true;
+  }
+
+  @Override
+  public boolean process(AudioEvent event) {
+    wsola.process(event);
+    rateTransposer.process(event);
+
+    if (shiftChanged) {
+      rateTransposer.setFactor(centsToFactor(cents));
+      shiftChanged = false;
+    }
+
+    for (float sample : event.getFloatBuffer()) {
+      frame[frameLength++] = sample >= -1f && sample <= 1f ? sample : wrap(sample);
+
+      if (frameLength == FRAME_SIZE) {
+        emitFrame();
+      }
+    }
+
+    // never break the chain
+    return true;
+  }
+
+  @Override
+  public void processingFinished() {
+    wsola.processingFinished();
+    rateTransposer.processingFinished();
+
+    // zero-pad the last frame, as the dispatcher does
+    if (frameLength > 0) {
+      Arrays.fill(frame, frameLength, FRAME_SIZE, 0f);
+      emitFrame();
+    }
+
+    next.processingFinished();
+  }
+
+  private void emitFrame() {
+    frameEvent.setFloatBuffer(frame);
+    next.process(frameEvent);
+    frameLength = 0;
+  }
+
+  /**
+   * Round trip of a sample beyond full scale through a 16 bits WAV file: the writer truncates it to an int
+   * and keeps its 16 low bits, the reader scales the short back
+   */
+  static float wrap(float sample) {
+    return (short) (int) (sample * 32767.0) * (1f / 32767f);
+  }
+
+  private static Parameters wsolaParameters(double factor) {
+    return new Parameters(factor, SAMPLING_RATE, WSOLA_SEQUENCE_MS, WSOLA_SEEK_WINDOW_MS, WSOLA_OVERLAP_MS);
+  }
+
+  /**
+   * Converts a pitch shift into a time stretching factor
+   */
+  static double centsToFactor(int cents) {
+    return 1 / Math.pow(2, cents / 1200.0);
+  }
+}
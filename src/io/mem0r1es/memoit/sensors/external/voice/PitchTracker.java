@@ -0,0 +1,133 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import com.google.common.base.Preconditions;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.pitch.PitchDetectionResult;
+import be.tarsos.dsp.pitch.PitchDetector;
+
+import static be.tarsos.dsp.pitch.PitchProcessor.PitchEstimationAlgorithm.FFT_YIN;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.MAX_PITCH;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.MIN_PITCH;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.TONES;
+
+/**
+ * Online pitch normalisation, real-time counterpart of the mean pitch pass of the block extraction.
+ * Placed before a {@link PitchShifter} in the chain of a streaming dispatcher.
+ * <p>
+ * Keeps the running mean of the pitch of the source, on frames of {@link CallRecorder#FRAME_SIZE} samples
+ * cut from its input whatever the input frame size. Until {@link #WARM_UP_FRAMES} voiced frames have been seen,
+ * the source is assumed to be at the reference of the {@link CallRecorder#TONES}, and is not shifted.
+ * Then the shift is re-evaluated every hop, that is once per window, and only applies to the audio to come.
+ *
+ * @author Cyriaque Brousse
+ */
+public class PitchTracker implements AudioProcessor {
+
+  /** Number of voiced frames needed before the mean pitch is trusted: one second */
+  public static final int WARM_UP_FRAMES = SlidingWindowProcessor.secondsToFrames(1);
+
+  /* **********************************
+             Processing constants
+     ********************************** */
+  /** Detector for the pitch. Not shared, as it is stateful. */
+  private final PitchDetector PITCH_DETECTOR = FFT_YIN.getDetector(SAMPLING_RATE, FRAME_SIZE);
+
+  /** Shifter whose shift is updated */
+  private final PitchShifter SHIFTER;
+
+  /** Number of frames between two updates of the shift */
+  private final int HOP_SIZE;
+
+  /* **********************************
+                Accumulators
+     ********************************** */
+  /** Frame being filled with the new samples of the input */
+  private final float[] frame = new float[FRAME_SIZE];
+
+  /** Number of samples currently in the frame */
+  private int frameLength = 0;
+
+  /** Number of complete frames so far */
+  private long frames = 0L;
+
+  /** Number of new samples received so far */
+  private long samples = 0L;
+
+  /** Sum and number of the pitches in [MIN_PITCH,MAX_PITCH] so far */
+  private double pitchSum = 0.0;
+  private int voicedFrames = 0;
+
+  /**
+   * @param shifter shifter whose shift is updated, fed by the same dispatcher
+   * @param hopSize number of frames between two updates of the shift
+   */
+  public PitchTracker(PitchShifter shifter, int hopSize) {
+    Preconditions.checkArgument(hopSize >= 1, "hop must be at least one frame");
+
+    SHIFTER = shifter;
+    HOP_SIZE = hopSize;
+  }
+
+  /**
+   * @return the mean pitch so far (Hz), {@code NaN} if no frame was voiced
+   */
+  public float getMeanPitch() {
+    return voicedFrames == 0 ? Float.NaN : (float) (pitchSum / voicedFrames);
+  }
+
+  /**
+   * @return the number of samples received so far, overlapping samples counted once
+   */
+  public long getSamples() {
+    return samples;
+  }
+
+  /* **********************************
+               Pipeline methods
+     ********************************** */
+
+  @Override
+  public boolean process(AudioEvent event) {
+    final float[] buffer = event.getFloatBuffer();
+
+    // only the samples not seen in the previous input frame: all of them in the first one
+    final int overlap = samples == 0 ? 0 : event.getOverlap();
+    for (int i = overlap; i < buffer.length; i++) {
+      frame[frameLength++] = buffer[i];
+
+      if (frameLength == FRAME_SIZE) {
+        analyzeFrame();
+        frameLength = 0;
+      }
+    }
+    samples += buffer.length - overlap;
+
+    // never break the chain
+    return true;
+  }
+
+  @Override
+  public void processingFinished() { }
+
+  private void analyzeFrame() {
+    final PitchDetectionResult result = PITCH_DETECTOR.getPitch(frame);
+    if (result.isPitched()) {
+      final float pitch = result.getPitch();
+      if (pitch >= MIN_PITCH && pitch <= MAX_PITCH) {
+        pitchSum += pitch;
+        voicedFrames++;
+      }
+    }
+
+    frames++;
+    if (frames % HOP_SIZE == 0 && voicedFrames >= WARM_UP_FRAMES) {
+      // differences of semitones to the reference
+      SHIFTER.setCents(TONES.semitonesDifferenceCount(getMeanPitch()) * 100);
+    }
+  }
+
+}
@@ -9,6 +9,7 @@ import java.util.List;
 
 import be.tarsos.dsp.AudioEvent;
 import be.tarsos.dsp.AudioProcessor;
+import io.mem0r1es.memoit.sensors.external.voice.util.Metrics;
 
 import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
 import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
@@ -22,6 +23,9 @@ import static io.mem0r1es.memoit.sensors.external.voice.util.BlockStat.Builder.g
  */
 public class Preprocessor implements AudioProcessor {
 
+  /** Silence threshold, relative to the maximal energy of the voice excerpt */
+  public static final double SILENCE_THRESHOLD_RATIO = 0.005;
+
   private final List<Float> energies = new ArrayList<>();
   private final int[] output;
 
@@ -39,19 +43,24 @@ public class Preprocessor implements AudioProcessor {
   @Override
   public boolean process(AudioEvent event) {
     final float[] frame = event.getFloatBuffer();
+    final long start = Metrics.start();
 
     energies.add((float) BlockProcessor.smoothedEnergy(frame));
 
+    Metrics.stop(Metrics.PREPROCESSOR_FRAME_NANOS, start);
+
     // never break the chain
     return true;
   }
 
   @Override
   public void processingFinished() {
+    final long start = Metrics.start();
+
     // determine silence threshold
     // that is, 0.5% of maximal energy for the voice excerpt
     final DescriptiveStatistics stat = getStat(energies);
-    final float silenceThreshold = (float) (0.005 * stat.getMax());
+    final float silenceThreshold = (float) (SILENCE_THRESHOLD_RATIO * stat.getMax());
 
     // determine first non-silent frame
     for (int i = 0; i < energies.size(); i++) {
@@ -68,6 +77,8 @@ public class Preprocessor implements AudioProcessor {
         break;
       }
     }
+
+    Metrics.stop(Metrics.PREPROCESSOR_BOUNDS_NANOS, start);
   }
 
   public double frameToTime(long frameNumber) {
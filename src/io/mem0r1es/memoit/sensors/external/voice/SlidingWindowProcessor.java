@@ -0,0 +1,193 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import com.google.common.base.Preconditions;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.BandsEnergyMethod;
+import io.mem0r1es.memoit.sensors.external.voice.util.BlockStat;
+import io.mem0r1es.memoit.sensors.external.voice.util.FrameFeatures;
+import io.mem0r1es.memoit.sensors.external.voice.util.Metrics;
+import io.mem0r1es.memoit.sensors.external.voice.util.SeriesStat;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static io.mem0r1es.memoit.sensors.external.voice.Preprocessor.SILENCE_THRESHOLD_RATIO;
+
+/**
+ * Real-time counterpart of {@link BlockProcessor}.
+ * Computes statistics on windows of a fixed number of frames, sliding by a fixed hop,
+ * and hands each window over as soon as its last frame has been processed.
+ * <p>
+ * Silence is trimmed online, on the energy extracted with the other features: a frame is silent if its energy
+ * is below a ratio of the maximal energy seen so far (see {@link Preprocessor}), or if it does not stand above
+ * the noise floor. The noise floor is the minimal energy seen so far, rising by
+ * {@link #NOISE_FLOOR_RISE_PER_SECOND} every second so that it follows louder background noise. As the first
+ * frames set the floor, steady noise or hiss is never taken for speech. Leading silent frames are skipped,
+ * and windows made only of silent frames are not emitted.
+ * <p>
+ * Only the features of the frames of the current window are kept.
+ *
+ * @author Cyriaque Brousse
+ */
+public class SlidingWindowProcessor implements AudioProcessor {
+
+  /**
+   * Receives the statistics of each window
+   */
+  public interface WindowHandler {
+    /**
+     * @param window statistics of the window. Its {@code startId} is the number of its first frame.
+     * @param latencyNanos time between the arrival of the last frame of the window and this call
+     */
+    void handleWindow(BlockStat window, long latencyNanos);
+  }
+
+  /* **********************************
+             Processing constants
+     ********************************** */
+  /** Ratio to the noise floor above which the energy of a frame must be for it to be non-silent (10 dB) */
+  public static final double NOISE_FLOOR_RATIO = 10.0;
+
+  /** Factor by which the noise floor rises every second (3 dB) */
+  public static final double NOISE_FLOOR_RISE_PER_SECOND = 2.0;
+
+  /** Factor by which the noise floor rises every frame */
+  private static final double NOISE_FLOOR_RISE =
+     Math.pow(NOISE_FLOOR_RISE_PER_SECOND, (double) FRAME_SIZE / SAMPLING_RATE);
+
+  /** Number of frames of a window */
+  private final int WINDOW_SIZE;
+
+  /** Number of frames between the starts of two consecutive windows */
+  private final int HOP_SIZE;
+
+  /** Accumulation mode of the window statistics */
+  private final SeriesStat.Mode STATS_MODE;
+
+  /** Extracts the features of each frame */
+  private final FrameAnalyzer FRAME_ANALYZER;
+
+  /** Receives the statistics of each window */
+  private final WindowHandler HANDLER;
+
+  /* **********************************
+                Accumulators
+     ********************************** */
+  /** Keeps track of the currently processed frame. Zero-indexed. */
+  private long currentFrameNumber = 0L;
+
+  /** Number of frames buffered since the first non-silent frame */
+  private long bufferedFrames = 0L;
+
+  /** Maximal energy seen so far */
+  private float maxEnergy = 0f;
+
+  /** Estimate of the energy of the background noise: rising minimum of the non-zero energies seen so far */
+  private double noiseFloor = Double.POSITIVE_INFINITY;
+
+  /** Features of the frames of the current window, indexed by their buffered position modulo the window size */
+  private final FrameFeatures[] window;
+
+  /** Whether each frame of the current window is non-silent */
+  private final boolean[] spoken;
+
+  /** Number of non-silent frames in the current window */
+  private int spokenFrames = 0;
+
+  /* **********************************
+                Constructor
+     ********************************** */
+  public SlidingWindowProcessor(int windowSize, int hopSize, BandsEnergyMethod bandsEnergyMethod,
+                                SeriesStat.Mode statsMode, WindowHandler handler) {
+    Preconditions.checkArgument(windowSize >= 2, "window must span at least two frames");
+    Preconditions.checkArgument(hopSize >= 1, "hop must be at least one frame");
+
+    WINDOW_SIZE = windowSize;
+    HOP_SIZE = hopSize;
+    STATS_MODE = statsMode;
+    FRAME_ANALYZER = new FrameAnalyzer(bandsEnergyMethod);
+    HANDLER = handler;
+
+    window = new FrameFeatures[windowSize];
+    for (int i = 0; i < windowSize; i++) {
+      window[i] = new FrameFeatures();
+    }
+    spoken = new boolean[windowSize];
+  }
+
+  /**
+   * @param seconds a duration (s)
+   * @return the closest number of frames
+   */
+  public static int secondsToFrames(double seconds) {
+    return (int) Math.round(seconds * SAMPLING_RATE / FRAME_SIZE);
+  }
+
+  /* **********************************
+               Pipeline methods
+     ********************************** */
+
+  @Override
+  public boolean process(AudioEvent event) {
+    final long arrival = System.nanoTime();
+    final float[] frame = event.getFloatBuffer();
+
+    // analyze into the slot of the oldest frame of the window, which is replaced
+    final int slot = (int) (bufferedFrames % WINDOW_SIZE);
+    final long start = Metrics.start();
+    FRAME_ANALYZER.analyze(frame, window[slot]);
+    Metrics.stop(Metrics.FRAME_NANOS, start);
+    Metrics.increment(Metrics.FRAMES, 1);
+
+    // online silence detection, on the energy just extracted
+    final float energy = window[slot].energy;
+    maxEnergy = Math.max(maxEnergy, energy);
+    if (energy > 0f) {
+      // digital silence would pin the floor to zero
+      noiseFloor = Math.min(energy, noiseFloor * NOISE_FLOOR_RISE);
+    }
+    final boolean silent = energy <= SILENCE_THRESHOLD_RATIO * maxEnergy || energy <= NOISE_FLOOR_RATIO * noiseFloor;
+
+    // skip the leading silence: the slot is overwritten by the next frame
+    if (bufferedFrames == 0 && silent) {
+      currentFrameNumber++;
+      return true;
+    }
+
+    if (spoken[slot]) {
+      spokenFrames--;
+    }
+    spoken[slot] = !silent;
+    if (!silent) {
+      spokenFrames++;
+    }
+
+    bufferedFrames++;
+    currentFrameNumber++;
+
+    final boolean windowEnd = bufferedFrames >= WINDOW_SIZE && (bufferedFrames - WINDOW_SIZE) % HOP_SIZE == 0;
+    if (windowEnd && spokenFrames > 0) {
+      final BlockStat stat = buildWindow();
+      HANDLER.handleWindow(stat, System.nanoTime() - arrival);
+    }
+
+    // never break the chain
+    return true;
+  }
+
+  @Override
+  public void processingFinished() { }
+
+  /**
+   * Computes the statistics on the frames of the current window, from the oldest to the newest
+   */
+  private BlockStat buildWindow() {
+    final BlockStat.Builder builder = new BlockStat.Builder(currentFrameNumber - WINDOW_SIZE, WINDOW_SIZE, STATS_MODE);
+    for (int i = 0; i < WINDOW_SIZE; i++) {
+      builder.addFrame(window[(int) ((bufferedFrames + i) % WINDOW_SIZE)]);
+    }
+    return builder.build();
+  }
+
+}
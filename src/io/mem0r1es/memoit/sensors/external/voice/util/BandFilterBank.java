@@ -0,0 +1,147 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+/**
+ * Bank of band pass filters computing the energy of a frame in each frequency band.
+ * The coefficients and bins are computed once, so that no allocation happens per frame.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class BandFilterBank {
+
+  /** Number of bands */
+  private final int numBands;
+
+  /** Feed-forward coefficients (a0,a1,a2) of each band, see {@link BandPassFilter} */
+  private final float[][] a;
+
+  /** Feedback coefficients (b1,b2) of each band, see {@link BandPassFilter} */
+  private final float[][] b;
+
+  /** Window function coefficients, applied on the filtered frame */
+  private final float[] window;
+
+  /** First spectrum bin of each band (inclusive) */
+  private final int[] firstBins;
+
+  /** Last spectrum bin of each band (inclusive) */
+  private final int[] lastBins;
+
+  /**
+   * Constructs the filter bank
+   *
+   * @param bands pairs of (band_center,band_width) (Hz)
+   * @param sampleRate sample rate of the frames (Hz)
+   * @param window window function coefficients, one per sample of a frame
+   */
+  public BandFilterBank(List<Pair<Float, Float>> bands, float sampleRate, float[] window) {
+    Preconditions.checkArgument(!bands.isEmpty(), "at least one band is needed");
+
+    this.numBands = bands.size();
+    this.a = new float[numBands][];
+    this.b = new float[numBands][];
+    this.window = window;
+    this.firstBins = new int[numBands];
+    this.lastBins = new int[numBands];
+
+    final int frameSize = window.length;
+    final float binWidth = sampleRate / frameSize;
+
+    for (int i = 0; i < numBands; i++) {
+      final Pair<Float, Float> band = bands.get(i);
+
+      // same coefficients as the ones of a freshly built filter
+      final BandPassFilter filter = new BandPassFilter(band.first, band.second, sampleRate);
+      a[i] = filter.a.clone();
+      b[i] = filter.b.clone();
+      Preconditions.checkState(a[i].length == 3 && b[i].length == 2, "unexpected band pass filter order");
+
+      // bins whose frequency lies in [center - width/2, center + width/2)
+      final float lower = band.first - band.second / 2f;
+      final float upper = band.first + band.second / 2f;
+      firstBins[i] = (int) Math.ceil(lower / binWidth);
+      lastBins[i] = Math.min((int) Math.ceil(upper / binWidth) - 1, frameSize / 2 - 1);
+      if (lastBins[i] < firstBins[i]) {
+        // band narrower than a bin: take the closest one
+        firstBins[i] = lastBins[i] = Math.min(Math.round(band.first / binWidth), frameSize / 2 - 1);
+      }
+    }
+  }
+
+  /**
+   * @return the number of bands
+   */
+  public int size() {
+    return numBands;
+  }
+
+  /**
+   * Filters the frame through each band pass filter, and computes the windowed energy of the result.
+   * Gives exactly the same values as a new {@link BandPassFilter} followed by a smoothed energy computation,
+   * but without copying the frame nor allocating the filters; {@code BandsEnergyMethodTest} checks it.
+   *
+   * @param frame audio frame, left untouched
+   * @param energies output buffer, receives the energy of each band
+   */
+  public void filterEnergies(float[] frame, float[] energies) {
+    Preconditions.checkArgument(frame.length == window.length, "frame size does not match the window size");
+
+    for (int band = 0; band < numBands; band++) {
+      final float a0 = a[band][0], a1 = a[band][1], a2 = a[band][2];
+      final float b1 = b[band][0], b2 = b[band][1];
+
+      // filter state, reset for each frame: previous inputs and outputs
+      float in1 = 0f, in2 = 0f;
+      float out1 = 0f, out2 = 0f;
+
+      double power = 0.0;
+      for (int i = 0; i < frame.length; i++) {
+        final float in0 = frame[i];
+
+        // same operation order as IIRFilter#process
+        float y = 0;
+        y += a0 * in0;
+        y += a1 * in1;
+        y += a2 * in2;
+        y += b1 * out1;
+        y += b2 * out2;
+
+        in2 = in1;
+        in1 = in0;
+        out2 = out1;
+        out1 = y;
+
+        final float sample = y * window[i];
+        power += sample * sample;
+      }
+
+      energies[band] = (float) power;
+    }
+  }
+
+  /**
+   * Computes the energy of each band from the magnitude spectrum of the windowed frame.
+   * By Parseval's theorem, the energy of a band is {@code 2/N} times the sum of the squared magnitudes
+   * of its bins. This is an approximation of {@link #filterEnergies(float[], float[])}: the bands have
+   * sharp edges, and the window is applied before rather than after the filtering. {@code BandsEnergyMethodTest}
+   * bounds the difference.
+   *
+   * @param magnitudes magnitude spectrum, whose first {@code N/2} values are the bins {@code 0..N/2-1}
+   * @param energies output buffer, receives the energy of each band
+   */
+  public void spectrumEnergies(float[] magnitudes, float[] energies) {
+    final float scale = 2f / window.length;
+
+    for (int band = 0; band < numBands; band++) {
+      double power = 0.0;
+      for (int k = firstBins[band]; k <= lastBins[band]; k++) {
+        power += magnitudes[k] * magnitudes[k];
+      }
+      energies[band] = (float) (scale * power);
+    }
+  }
+
+}
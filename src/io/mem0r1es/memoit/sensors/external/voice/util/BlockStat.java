@@ -1,24 +1,17 @@
 package io.mem0r1es.memoit.sensors.external.voice.util;
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Optional;
 
 import be.tarsos.dsp.beatroot.Peaks;
 
 import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
-import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.EMOTION_MAPPER;
 import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
 import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
 import static io.mem0r1es.memoit.sensors.external.voice.util.CollectionsUtils.unzipLeft;
@@ -35,39 +28,28 @@ public class BlockStat {
   /** Id of the first frame of this block */
   public final long startId;
 
-  public final ImmutableMap<String, Number> stats;
+  /** Value of each statistic, in the order of {@link FeatureSchema#COLUMNS} */
+  public final Number[] values;
 
-  public BlockStat(long startId, ImmutableMap<String, Number> stats) {
-    this.startId = startId;
-    this.stats = stats;
-  }
-
-  public void printWithEmotion(String fileName) {
-    // remove extension
-    if (fileName.contains(".")) {
-      fileName = fileName.substring(0, fileName.indexOf("."));
-    }
-
-    // sample -> (coarse_emotion,binary_emotion)
-    final Optional<Pair<String, String>> emotion = Optional.ofNullable(EMOTION_MAPPER.get(fileName));
+  public BlockStat(long startId, Number[] values) {
+    Preconditions.checkArgument(values.length == FeatureSchema.COLUMNS.size(),
+       "expected " + FeatureSchema.COLUMNS.size() + " values");
 
-    if (!emotion.isPresent()) {
-      System.err.println("[E] missing mapping for file " + fileName);
-      return;
-    }
-
-    stats.forEach((desc, stat) -> System.out.print(stat + ","));
-    System.out.print(fileName + ",");
-    System.out.print(emotion.get().first + ",");
-    System.out.print(emotion.get().second);
+    this.startId = startId;
+    this.values = values;
   }
 
-  public void printHeader() {
-    stats.forEach((desc, stat) -> System.out.println(desc));
+  /**
+   * @param column name of the statistic, see {@link FeatureSchema#COLUMNS}
+   * @return its value
+   */
+  public Number get(String column) {
+    return values[FeatureSchema.indexOf(column)];
   }
 
   /**
-   * Implements Builder pattern for constructing the block statistic
+   * Implements Builder pattern for constructing the block statistic.
+   * Values are accumulated frame by frame into {@link SeriesStat}s, see {@link SeriesStat.Mode}.
    */
   public static final class Builder {
     public final long startId;
@@ -75,66 +57,177 @@ public class BlockStat {
     /** Frame block size. Assumes no overlap. */
     public final int BLOCK_SIZE;
 
-    /** Extracted pitch for each frame */
-    public final List<Float> pitches = new ArrayList<>();
+    /** Accumulation mode of the statistics */
+    public final SeriesStat.Mode MODE;
 
-    /** Extracted energy for each frame */
-    public final List<Float> energies = new ArrayList<>();
+    /** Percentiles queried on the series */
+    private static final double MEDIAN = 50.0;
+    private static final double DERIVATIVE_MEDIAN = 0.50;
 
-    /** Extracted MFCCs for each frame */
-    public final List<float[]> mfccs = new ArrayList<>();
+    /** Minimal distance of a pitch peak to the mean pitch (Hz) */
+    private static final float PEAK_THRESHOLD = 10f;
 
-    /** For each band: (band_center, band_energy[frame0..frameN] ) */
-    public final Map<Float, List<Float>> bandsEnergies = new HashMap<>();
-    {
-      for (Pair<Float, Float> band : FREQUENCY_BANDS) {
-        bandsEnergies.put(band.first, new ArrayList<>());
-      }
-    }
+    /** Extracted pitch for each voiced frame, and the up/down slopes between them */
+    private final SeriesStat pitches;
+    private final SeriesStat pitchUpSlopes;
+    private final SeriesStat pitchDownSlopes;
+    private float lastPitch;
+
+    /** Pitch peaks, only tracked in streaming mode (the exact mode needs the whole series) */
+    private final StreamingPeaks pitchPeaks;
+
+    /** Extracted energy for each frame, and the up/down slopes between them */
+    private final SeriesStat energies;
+    private final SeriesStat energyUpSlopes;
+    private final SeriesStat energyDownSlopes;
+    private float lastEnergy;
+
+    /** Extracted MFCCs for each frame, and their derivatives, per coefficient */
+    private final SeriesStat[] mfccs = new SeriesStat[NUM_CEPSTRUM_COEF];
+    private final SeriesStat[] mfccDerivatives = new SeriesStat[NUM_CEPSTRUM_COEF];
+    private final float[] lastMfcc = new float[NUM_CEPSTRUM_COEF];
+
+    /** For each band, in the order of {@code FREQUENCY_BANDS}: band_energy[frame0..frameN] */
+    private final SeriesStat[] bandsEnergies = new SeriesStat[FREQUENCY_BANDS.size()];
 
     public Builder(long startId, int blockSize) {
+      this(startId, blockSize, SeriesStat.Mode.EXACT);
+    }
+
+    public Builder(long startId, int blockSize, SeriesStat.Mode mode) {
       this.startId = startId;
       BLOCK_SIZE = blockSize;
+      MODE = mode;
+
+      pitches = new SeriesStat(mode, MEDIAN);
+      pitchUpSlopes = new SeriesStat(mode, MEDIAN);
+      pitchDownSlopes = new SeriesStat(mode, MEDIAN);
+      pitchPeaks = mode == SeriesStat.Mode.STREAMING ? new StreamingPeaks(pitches, PEAK_THRESHOLD) : null;
+
+      energies = new SeriesStat(mode, MEDIAN);
+      energyUpSlopes = new SeriesStat(mode, MEDIAN);
+      energyDownSlopes = new SeriesStat(mode, MEDIAN);
+
+      for (int i = 0; i < NUM_CEPSTRUM_COEF; ++i) {
+        mfccs[i] = new SeriesStat(mode, MEDIAN);
+        mfccDerivatives[i] = new SeriesStat(mode, DERIVATIVE_MEDIAN);
+      }
+
+      for (int i = 0; i < FREQUENCY_BANDS.size(); ++i) {
+        bandsEnergies[i] = new SeriesStat(mode, MEDIAN);
+      }
+    }
+
+    /**
+     * Adds all the features of the current frame
+     */
+    public void addFrame(FrameFeatures frame) {
+      final long start = Metrics.start();
+
+      if (frame.isVoiced()) {
+        addPitch(frame.pitch);
+      }
+      addEnergy(frame.energy);
+      addBandsEnergy(frame.bandsEnergy);
+      addMfcc(frame.mfcc);
+
+      Metrics.stop(Metrics.STATS_ADD_NANOS, start);
+    }
+
+    /**
+     * @param pitch pitch of the current frame, if it is voiced
+     */
+    public void addPitch(float pitch) {
+      if (pitches.getN() > 0) {
+        addSlope(pitch - lastPitch, pitchUpSlopes, pitchDownSlopes);
+      }
+      pitches.add(pitch);
+      lastPitch = pitch;
+
+      if (pitchPeaks != null) {
+        pitchPeaks.add(pitch);
+      }
+    }
+
+    /**
+     * @param energy energy of the current frame
+     */
+    public void addEnergy(float energy) {
+      if (energies.getN() > 0) {
+        addSlope(energy - lastEnergy, energyUpSlopes, energyDownSlopes);
+      }
+      energies.add(energy);
+      lastEnergy = energy;
+    }
+
+    /**
+     * @param bandsEnergy energy of each band for the current frame, in the order of {@code FREQUENCY_BANDS}
+     */
+    public void addBandsEnergy(float[] bandsEnergy) {
+      for (int i = 0; i < bandsEnergies.length; ++i) {
+        bandsEnergies[i].add(bandsEnergy[i]);
+      }
+    }
+
+    /**
+     * @param mfcc cepstrum coefficients of the current frame
+     */
+    public void addMfcc(float[] mfcc) {
+      for (int i = 0; i < NUM_CEPSTRUM_COEF; ++i) {
+        if (mfccs[i].getN() > 0) {
+          mfccDerivatives[i].add(mfcc[i] - lastMfcc[i]);
+        }
+        mfccs[i].add(mfcc[i]);
+        lastMfcc[i] = mfcc[i];
+      }
     }
 
     public BlockStat build() {
-      final ImmutableMap.Builder<String, Number> stat = ImmutableMap.builder();
+      final long start = Metrics.start();
+      final Row stat = new Row();
 
       /* **********************************
                    Stats on pitch
          ********************************** */
       {
-        final DescriptiveStatistics pitchStat = getStat(pitches);
-        final List<Float> pitchDerivatives = getDerivatives(pitches);
-        final DescriptiveStatistics pitchUpSlopeStat = getStat(getSlopes(pitchDerivatives, true));
-        final DescriptiveStatistics pitchDownSlopeStat = getStat(getSlopes(pitchDerivatives, false));
+        final SeriesStat pitchStat = pitches;
+        final SeriesStat pitchUpSlopeStat = pitchUpSlopes;
+        final SeriesStat pitchDownSlopeStat = pitchDownSlopes;
 
         final float pitchMean = (float) pitchStat.getMean();
         final float pitchStdDev = (float) pitchStat.getStandardDeviation();
 
         stat.put("pitchMean", pitchMean)
-           .put("pitchMedian", (float) pitchStat.getPercentile(50.0))
+           .put("pitchMedian", (float) pitchStat.getPercentile(MEDIAN))
            .put("pitchStdDev", pitchStdDev)
            .put("pitchMax", (float) pitchStat.getMax())
            .put("pitchRange", (float) (pitchStat.getMax() - pitchStat.getMin()))
-           .put("pitchUpSlopeMedian", (float) pitchUpSlopeStat.getPercentile(50.0))
+           .put("pitchUpSlopeMedian", (float) pitchUpSlopeStat.getPercentile(MEDIAN))
            .put("pitchUpSlopeMean", (float) pitchUpSlopeStat.getMean())
-           .put("pitchDownSlopeMedian", (float) pitchDownSlopeStat.getPercentile(50.0))
+           .put("pitchDownSlopeMedian", (float) pitchDownSlopeStat.getPercentile(MEDIAN))
            .put("pitchDownSlopeMean", (float) pitchDownSlopeStat.getMean())
            .put("pitchUpFramesRatio", (float) pitchUpSlopeStat.getN() / (float) BLOCK_SIZE)
-           .put("pitchVoicedFramesRatio", (float) pitches.size() / (float) BLOCK_SIZE);
-
-        // peaks values analysis
-        final List<Pair<Integer, Float>> pitchPeaks = extractPitchPeaks(pitches, pitchMean, pitchStdDev, 10);
+           .put("pitchVoicedFramesRatio", (float) pitchStat.getN() / (float) BLOCK_SIZE);
+
+        // peaks values and distances analysis
+        final SeriesStat pitchPeaksStat;
+        final SeriesStat pitchPeaksDistStat;
+        if (MODE == SeriesStat.Mode.EXACT) {
+          final List<Pair<Integer, Float>> peaks =
+             extractPitchPeaks(pitchStat.doubleValues(), pitchMean, pitchStdDev, PEAK_THRESHOLD);
+          pitchPeaksStat = exactStat(unzipRight(peaks));
+          pitchPeaksDistStat = exactStat(computeTimeDistances(unzipLeft(peaks)));
+        } else {
+          pitchPeaks.flush();
+          pitchPeaksStat = pitchPeaks.values;
+          pitchPeaksDistStat = pitchPeaks.distances;
+        }
 
-        final DescriptiveStatistics pitchPeaksStat = getStat(unzipRight(pitchPeaks));
         stat.put("pitchPeaksNum", pitchPeaksStat.getN())
            .put("pitchPeaksMean", pitchPeaksStat.getMean())
            .put("pitchPeaksStdDev", pitchPeaksStat.getStandardDeviation())
            .put("pitchPeaksRange", pitchPeaksStat.getMax() - pitchPeaksStat.getMin());
 
-        // peaks distances analysis
-        final DescriptiveStatistics pitchPeaksDistStat = getStat(computeTimeDistances(unzipLeft(pitchPeaks)));
         stat.put("pitchPeaksDistMean", pitchPeaksDistStat.getMean())
            .put("pitchPeaksDistStdDev", pitchPeaksDistStat.getStandardDeviation())
            .put("pitchPeaksDistRange", pitchPeaksDistStat.getMax() - pitchPeaksDistStat.getMin())
@@ -147,90 +240,94 @@ public class BlockStat {
          ********************************** */
       final float meanGlobalEnergy;
       {
-        final DescriptiveStatistics energyStat = getStat(energies);
-        final List<Float> energyDerivatives = getDerivatives(energies);
-        final DescriptiveStatistics energyUpSlopeStat = getStat(getSlopes(energyDerivatives, true));
-        final DescriptiveStatistics energyDownSlopeStat = getStat(getSlopes(energyDerivatives, false));
+        final SeriesStat energyStat = energies;
+        final SeriesStat energyUpSlopeStat = energyUpSlopes;
+        final SeriesStat energyDownSlopeStat = energyDownSlopes;
 
         meanGlobalEnergy = (float) energyStat.getMean();
 
         stat.put("energyMean", meanGlobalEnergy)
-            .put("energyMedian", (float) energyStat.getPercentile(50.0))
+            .put("energyMedian", (float) energyStat.getPercentile(MEDIAN))
             .put("energyStdDev", (float) energyStat.getStandardDeviation())
             .put("energyMax", (float) energyStat.getMax())
             .put("energyRange", (float) (energyStat.getMax() - energyStat.getMin()))
-            .put("energyUpSlopeMedian", (float) energyUpSlopeStat.getPercentile(50.0))
-            .put("energyDownSlopeMedian", (float) energyDownSlopeStat.getPercentile(50.0))
+            .put("energyUpSlopeMedian", (float) energyUpSlopeStat.getPercentile(MEDIAN))
+            .put("energyDownSlopeMedian", (float) energyDownSlopeStat.getPercentile(MEDIAN))
             .put("energyUpFramesRatio", (float) energyUpSlopeStat.getN() / (float) BLOCK_SIZE);
       }
 
       /* **********************************
            Stats on frequency bands energy
          ********************************** */
-      for (Entry<Float, List<Float>> bandEnergies : bandsEnergies.entrySet()) {
-        final float center = bandEnergies.getKey();
-        final List<Float> values = bandEnergies.getValue();
-        final DescriptiveStatistics energyStat = getStat(values);
+      for (int band : FeatureSchema.BAND_ORDER) {
+        final SeriesStat energyStat = bandsEnergies[band];
 
         final float meanBandEnergy = (float) energyStat.getMean();
 
-        final String prefix = "band" + center + '_';
-        stat.put(prefix + "energyMean", meanBandEnergy)
-           .put(prefix + "energyMedian", (float) energyStat.getPercentile(50.0))
-           .put(prefix + "energyStdDev", (float) energyStat.getStandardDeviation())
-           .put(prefix + "energyMax", (float) energyStat.getMax())
-           .put(prefix + "energyRange", (float) (energyStat.getMax() - energyStat.getMin()))
-           .put(prefix + "energyRatio", meanBandEnergy / meanGlobalEnergy);
+        final String[] column = FeatureSchema.BAND_COLUMNS[band];
+        stat.put(column[0], meanBandEnergy)
+           .put(column[1], (float) energyStat.getPercentile(MEDIAN))
+           .put(column[2], (float) energyStat.getStandardDeviation())
+           .put(column[3], (float) energyStat.getMax())
+           .put(column[4], (float) (energyStat.getMax() - energyStat.getMin()))
+           .put(column[5], meanBandEnergy / meanGlobalEnergy);
       }
 
       /* **********************************
                    Stats on MFCCs
          ********************************** */
       for (int i = 0; i < NUM_CEPSTRUM_COEF; ++i) {
-        // get the ith coefficient for each frame
-        final List<Float> coeffs = new ArrayList<>();
-        for (float[] c : mfccs) {
-          coeffs.add(c[i]);
-        }
+        // statistics on the ith coefficient
+        final SeriesStat coefStat = mfccs[i];
+        final SeriesStat coefDerivativeStat = mfccDerivatives[i];
+
+        final String[] column = FeatureSchema.MFCC_COLUMNS[i];
+        stat.put(column[0], (float) coefStat.getMean())
+           .put(column[1], (float) coefStat.getPercentile(MEDIAN))
+           .put(column[2], (float) coefStat.getStandardDeviation())
+           .put(column[3], (float) coefStat.getMax())
+           .put(column[4], (float) (coefStat.getMax() - coefStat.getMin()))
+           .put(column[5], (float) coefDerivativeStat.getMean())
+           .put(column[6], (float) coefDerivativeStat.getPercentile(DERIVATIVE_MEDIAN))
+           .put(column[7], (float) coefDerivativeStat.getStandardDeviation())
+           .put(column[8], (float) coefDerivativeStat.getMax())
+           .put(column[9], (float) (coefDerivativeStat.getMax() - coefDerivativeStat.getMin()));
+      }
 
-        // compute statistics on the ith coefficient
-        final DescriptiveStatistics coefStat = getStat(coeffs);
-        final DescriptiveStatistics coefDerivativeStat = getStat(getDerivatives(coeffs));
-
-        final String prefix = "mfcc" + i + '_';
-        stat.put(prefix + "mean", (float) coefStat.getMean())
-           .put(prefix + "median", (float) coefStat.getPercentile(50.0))
-           .put(prefix + "stdDev", (float) coefStat.getStandardDeviation())
-           .put(prefix + "max", (float) coefStat.getMax())
-           .put(prefix + "range", (float) (coefStat.getMax() - coefStat.getMin()))
-           .put(prefix + "derivMean", (float) coefDerivativeStat.getMean())
-           .put(prefix + "derivMedian", (float) coefDerivativeStat.getPercentile(0.50))
-           .put(prefix + "derivStdDev", (float) coefDerivativeStat.getStandardDeviation())
-           .put(prefix + "derivMax", (float) coefDerivativeStat.getMax())
-           .put(prefix + "derivRange", (float) (coefDerivativeStat.getMax() - coefDerivativeStat.getMin()));
+      final BlockStat block = new BlockStat(startId, stat.build());
+      Metrics.stop(Metrics.STATS_BUILD_NANOS, start);
+      return block;
+    }
+
+    /**
+     * Fills the values of a block in the order of {@link FeatureSchema#COLUMNS}.
+     * Column names are only checked when assertions are enabled.
+     */
+    private static final class Row {
+      private final Number[] values = new Number[FeatureSchema.COLUMNS.size()];
+      private int size = 0;
+
+      Row put(String column, Number value) {
+        assert column.equals(FeatureSchema.COLUMNS.get(size)) : column + " out of schema order";
+        values[size++] = value;
+        return this;
       }
 
-      return new BlockStat(startId, stat.build());
+      Number[] build() {
+        Preconditions.checkState(size == values.length, "missing values");
+        return values;
+      }
     }
 
     /**
-     * Filters the derivatives list to keep only the positive/negative ones
-     *
-     * @param derivatives list to filter
-     * @param up {@code true}  if you want the strictly up slopes,
-     *           {@code false} if you want the strictly down ones
-     * @return the filtered list of derivatives
+     * Adds the derivative to the up or down slopes, if it is strictly positive or negative
      */
-    private List<Float> getSlopes(List<Float> derivatives, final boolean up) {
-      return Lists.newArrayList(Collections2.filter(derivatives, new Predicate<Float>() {
-        public boolean apply(Float f) {
-          if (up) {
-            return f != null && f > 0f;
-          } else {
-            return f != null && f < 0f;
-          }
-        }
-      }));
+    private static void addSlope(float derivative, SeriesStat up, SeriesStat down) {
+      if (derivative > 0f) {
+        up.add(derivative);
+      } else if (derivative < 0f) {
+        down.add(derivative);
+      }
     }
 
     public static DescriptiveStatistics getStat(Iterable<Float> in) {
@@ -241,41 +338,23 @@ public class BlockStat {
       return stat;
     }
 
-    private List<Float> getDerivatives(List<Float> in) {
-      if (in.size() < 2) {
-        return new ArrayList<>();
-      }
-
-      List<Float> out = new ArrayList<>();
-
-      for (int i = 0; i < in.size() - 1; ++i) {
-        out.add(in.get(i + 1) - in.get(i));
-      }
-
-      return out;
-    }
-
-    private double[] arrayFromFloatList(List<Float> in) {
-      if (in.isEmpty()) {
-        return new double[]{0};
-      }
-
-      double[] out = new double[in.size()];
-      for (int i = 0; i < in.size(); ++i) {
-        out[i] = in.get(i);
+    private static SeriesStat exactStat(Iterable<Float> in) {
+      final SeriesStat stat = new SeriesStat(SeriesStat.Mode.EXACT);
+      for (float f : in) {
+        stat.add(f);
       }
-      return out;
+      return stat;
     }
 
-    private List<Pair<Integer, Float>> extractPitchPeaks(final List<Float> values,
+    private List<Pair<Integer, Float>> extractPitchPeaks(final double[] values,
                                                          float avg, float std,
                                                          float threshold) {
       // extract the peaks indexes and map to (index,value)
       Iterable<Pair<Integer, Float>> peaks = Collections2.transform(
-         Peaks.findPeaks(arrayFromFloatList(values), 2, avg - std, 0.1, false),
+         Peaks.findPeaks(values.length == 0 ? new double[]{0} : values, 2, avg - std, 0.1, false),
          new Function<Integer, Pair<Integer, Float>>() {
            public Pair<Integer, Float> apply(Integer i) {
-             return Pair.create(i, values.get(i));
+             return Pair.create(i, (float) values[i]);
            }
          }
       );
@@ -313,9 +392,14 @@ public class BlockStat {
 
   @Override
   public String toString() {
+    final StringBuilder stats = new StringBuilder();
+    for (int i = 0; i < values.length; ++i) {
+      stats.append(i == 0 ? "" : ", ").append(FeatureSchema.COLUMNS.get(i)).append('=').append(values[i]);
+    }
+
     return "BlockStat{" +
        "startId=" + startId +
-       ", stats=" + stats +
+       ", stats={" + stats + '}' +
        '}';
   }
 }
@@ -0,0 +1,264 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a file written by {@link ColumnarFeatureSink}.
+ * Opening reads the header and the rows count of each row group, and maps the footer. Each row group is then
+ * memory-mapped the first time one of its cells is read: columns are read in place, without parsing nor copying
+ * the whole file, and without mapping the row groups that are never read. Not thread-safe.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class ColumnarFeatureReader implements Closeable {
+
+  /** Size of the trailer: footer offset and magic */
+  private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private final FileChannel channel;
+
+  private final ImmutableList<String> columns;
+  private final ImmutableList<String> labels;
+
+  /** Size of a row, over all the feature and label columns (bytes) */
+  private final long rowSize;
+
+  /** Row groups: offset of their content (after the rows count), and their number of rows */
+  private final List<Long> groupOffsets = new ArrayList<>();
+  private final List<Integer> groupRows = new ArrayList<>();
+
+  /** Mapped content of the row groups, {@code null} until first read */
+  private final List<ByteBuffer> groups = new ArrayList<>();
+
+  /** Index of the first row of each row group */
+  private final List<Long> groupStarts = new ArrayList<>();
+
+  private long rowCount = 0L;
+
+  /** Entries of each label column, indexed by their code */
+  private final List<String[]> dictionaries = new ArrayList<>();
+
+  private ColumnarFeatureReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    final long size = channel.size();
+    Preconditions.checkArgument(size >= 4 * Integer.BYTES + TRAILER_SIZE, "not a columnar feature file");
+
+    // trailer
+    final ByteBuffer trailer = map(size - TRAILER_SIZE, TRAILER_SIZE);
+    final long footer = trailer.getLong();
+    Preconditions.checkArgument(trailer.getInt() == ColumnarFeatureSink.MAGIC, "not a columnar feature file");
+
+    // header, read name by name as its size is not known beforehand
+    final ByteBuffer header = read(0, 4 * Integer.BYTES);
+    Preconditions.checkArgument(header.getInt() == ColumnarFeatureSink.MAGIC, "not a columnar feature file");
+    final int version = header.getInt();
+    Preconditions.checkArgument(version == ColumnarFeatureSink.VERSION, "unsupported version " + version);
+    final int featureColumns = header.getInt();
+    final int labelColumns = header.getInt();
+
+    long offset = header.limit();
+    final ImmutableList.Builder<String> names = ImmutableList.builder();
+    for (int i = 0; i < featureColumns + labelColumns; i++) {
+      final int length = read(offset, Integer.BYTES).getInt();
+      Preconditions.checkArgument(length >= 0 && offset + Integer.BYTES + length <= footer, "corrupt header");
+      names.add(new String(read(offset + Integer.BYTES, length).array(), StandardCharsets.UTF_8));
+      offset += Integer.BYTES + length;
+    }
+    final ImmutableList<String> allNames = names.build();
+    columns = allNames.subList(0, featureColumns);
+    labels = allNames.subList(featureColumns, allNames.size());
+
+    // row groups, up to the footer: only their rows count is read
+    rowSize = (long) Float.BYTES * featureColumns + (long) Integer.BYTES * labelColumns;
+    while (offset < footer) {
+      final int rows = read(offset, Integer.BYTES).getInt();
+      Preconditions.checkArgument(rows >= 0, "corrupt row groups");
+      groupOffsets.add(offset + Integer.BYTES);
+      groupRows.add(rows);
+      groups.add(null);
+      groupStarts.add(rowCount);
+      rowCount += rows;
+      offset += Integer.BYTES + rows * rowSize;
+    }
+    Preconditions.checkArgument(offset == footer, "corrupt row groups");
+
+    // footer
+    final ByteBuffer dictionariesBuffer = map(footer, size - TRAILER_SIZE - footer);
+    for (int i = 0; i < labelColumns; i++) {
+      dictionaries.add(readStrings(dictionariesBuffer, dictionariesBuffer.getInt()).toArray(new String[0]));
+    }
+  }
+
+  /**
+   * @param path file written by {@link ColumnarFeatureSink}
+   */
+  public static ColumnarFeatureReader open(Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return new ColumnarFeatureReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return names of the feature columns, in order
+   */
+  public ImmutableList<String> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return names of the label columns, in order
+   */
+  public ImmutableList<String> getLabels() {
+    return labels;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  public int getRowGroupCount() {
+    return groupRows.size();
+  }
+
+  /**
+   * @param group index of the row group
+   * @param column index of the feature column
+   * @return the values of the column in the row group, read in place
+   */
+  public FloatBuffer column(int group, int column) {
+    Preconditions.checkElementIndex(column, columns.size());
+
+    final int rows = groupRows.get(group);
+    final ByteBuffer slice = group(group).duplicate();
+    slice.position(column * rows * Float.BYTES).limit((column + 1) * rows * Float.BYTES);
+    return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+  }
+
+  /**
+   * @param column index of the feature column
+   * @param out receives the values of the column, for all the rows. Must hold {@link #getRowCount()} values.
+   */
+  public void readColumn(int column, float[] out) {
+    Preconditions.checkArgument(out.length >= rowCount, "output buffer is too small");
+
+    for (int group = 0; group < groupRows.size(); group++) {
+      column(group, column).get(out, (int) (long) groupStarts.get(group), groupRows.get(group));
+    }
+  }
+
+  /**
+   * @param row index of the row
+   * @param column index of the feature column
+   * @return the value of the cell
+   */
+  public float getFloat(long row, int column) {
+    Preconditions.checkElementIndex(column, columns.size());
+
+    final int group = groupOf(row);
+    final int rows = groupRows.get(group);
+    return group(group).getFloat((column * rows + (int) (row - groupStarts.get(group))) * Float.BYTES);
+  }
+
+  /**
+   * @param row index of the row
+   * @param label index of the label column
+   * @return the value of the cell
+   */
+  public String getLabel(long row, int label) {
+    Preconditions.checkElementIndex(label, labels.size());
+
+    final int group = groupOf(row);
+    final int rows = groupRows.get(group);
+    final int offset = columns.size() * rows * Float.BYTES
+       + (label * rows + (int) (row - groupStarts.get(group))) * Integer.BYTES;
+    return dictionaries.get(label)[group(group).getInt(offset)];
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /* **********************************
+                   Helpers
+     ********************************** */
+
+  private int groupOf(long row) {
+    Preconditions.checkArgument(row >= 0 && row < rowCount, "row " + row + " out of bounds");
+
+    int low = 0;
+    int high = groupStarts.size() - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (groupStarts.get(mid) <= row) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the mapped content of the row group, mapped on first call
+   */
+  private ByteBuffer group(int group) {
+    ByteBuffer content = groups.get(group);
+    if (content == null) {
+      try {
+        content = map(groupOffsets.get(group), groupRows.get(group) * rowSize);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      groups.set(group, content);
+    }
+    return content;
+  }
+
+  /**
+   * @return the given bytes of the file, read into a heap buffer
+   */
+  private ByteBuffer read(long offset, int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("truncated columnar feature file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private ByteBuffer map(long offset, long length) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static ImmutableList<String> readStrings(ByteBuffer buffer, int count) {
+    final ImmutableList.Builder<String> strings = ImmutableList.builder();
+    for (int i = 0; i < count; i++) {
+      final byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      strings.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return strings.build();
+  }
+}
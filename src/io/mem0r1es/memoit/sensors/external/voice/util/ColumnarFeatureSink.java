@@ -0,0 +1,208 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.EMOTION_MAPPER;
+
+/**
+ * Writes the features in a compact binary columnar format, read back by {@link ColumnarFeatureReader}.
+ * All numbers are little-endian.
+ * <pre>
+ * header:    magic | version | feature columns count | label columns count | column names
+ * row group: rows count | each feature column: rows float32 | each label column: rows int32
+ * footer:    each label column: entries count, entries | footer offset (int64) | magic
+ * </pre>
+ * Strings are written as their UTF-8 length (int32) followed by their bytes.
+ * Labels are dictionary encoded: a label cell holds the index of its value in the footer entries of its column.
+ * Rows are buffered column by column, and written a row group at a time.
+ * <p>
+ * There is one row per block, whichever the output of the extraction: unlike the default output of
+ * {@link CsvFeatureSink}, which prints all the blocks of a file on a single row, a file spans as many rows as it
+ * has blocks. The file of a row is given by its {@code file} label.
+ *
+ * @author Cyriaque Brousse
+ */
+public class ColumnarFeatureSink implements FeatureSink {
+
+  /** "VFC1" */
+  static final int MAGIC = 0x31434656;
+  static final int VERSION = 1;
+
+  /** Maximal number of rows of a row group */
+  static final int ROW_GROUP_SIZE = 4096;
+
+  /** Size of the output buffer (bytes) */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+  /** Number of bytes written to the channel so far */
+  private long position = 0L;
+
+  /** Rows of the current row group: {@code features[column][row]} */
+  private final float[][] features = new float[FeatureSchema.COLUMNS.size()][ROW_GROUP_SIZE];
+
+  /** Rows of the current row group: {@code labels[column][row]}, as dictionary codes */
+  private final int[][] labels = new int[FeatureSchema.LABELS.size()][ROW_GROUP_SIZE];
+
+  /** Number of rows in the current row group */
+  private int rows = 0;
+
+  /** Dictionary of each label column: value -> code */
+  private final List<Map<String, Integer>> dictionaries = new ArrayList<>();
+
+  /**
+   * @param channel channel to write to. Closed with this sink.
+   */
+  public ColumnarFeatureSink(WritableByteChannel channel) throws IOException {
+    this.channel = channel;
+
+    for (int i = 0; i < FeatureSchema.LABELS.size(); i++) {
+      dictionaries.add(new LinkedHashMap<>());
+    }
+
+    putInt(MAGIC);
+    putInt(VERSION);
+    putInt(FeatureSchema.COLUMNS.size());
+    putInt(FeatureSchema.LABELS.size());
+    for (String column : FeatureSchema.COLUMNS) {
+      putString(column);
+    }
+    for (String label : FeatureSchema.LABELS) {
+      putString(label);
+    }
+  }
+
+  /**
+   * @param path file to write to, replaced if it exists
+   */
+  public static ColumnarFeatureSink create(Path path) throws IOException {
+    return new ColumnarFeatureSink(FileChannel.open(path,
+       StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+  }
+
+  @Override
+  public void write(String fileName, List<BlockStat> blocks) throws IOException {
+    final String sample = EmotionMapper.sampleName(fileName);
+
+    // sample -> (coarse_emotion,binary_emotion)
+    final Pair<String, String> emotion = EMOTION_MAPPER.get(sample);
+
+    for (BlockStat block : blocks) {
+      if (emotion == null) {
+        System.err.println("[E] missing mapping for file " + sample);
+        continue;
+      }
+
+      for (int column = 0; column < block.values.length; column++) {
+        features[column][rows] = block.values[column].floatValue();
+      }
+      labels[0][rows] = encode(0, sample);
+      labels[1][rows] = encode(1, emotion.first);
+      labels[2][rows] = encode(2, emotion.second);
+
+      if (++rows == ROW_GROUP_SIZE) {
+        writeRowGroup();
+      }
+    }
+  }
+
+  /**
+   * Writes the pending rows and the footer, then closes the channel
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (rows > 0) {
+        writeRowGroup();
+      }
+
+      final long footer = position + buffer.position();
+      for (Map<String, Integer> dictionary : dictionaries) {
+        putInt(dictionary.size());
+        for (String entry : dictionary.keySet()) {
+          putString(entry);
+        }
+      }
+      ensure(Long.BYTES + Integer.BYTES);
+      buffer.putLong(footer);
+      buffer.putInt(MAGIC);
+      drain();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /* **********************************
+                   Helpers
+     ********************************** */
+
+  private int encode(int label, String value) {
+    final Map<String, Integer> dictionary = dictionaries.get(label);
+    Integer code = dictionary.get(value);
+    if (code == null) {
+      code = dictionary.size();
+      dictionary.put(value, code);
+    }
+    return code;
+  }
+
+  private void writeRowGroup() throws IOException {
+    putInt(rows);
+    for (float[] column : features) {
+      for (int row = 0; row < rows; row++) {
+        ensure(Float.BYTES);
+        buffer.putFloat(column[row]);
+      }
+    }
+    for (int[] column : labels) {
+      for (int row = 0; row < rows; row++) {
+        putInt(column[row]);
+      }
+    }
+    rows = 0;
+  }
+
+  private void putInt(int value) throws IOException {
+    ensure(Integer.BYTES);
+    buffer.putInt(value);
+  }
+
+  private void putString(String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    putInt(bytes.length);
+    for (byte b : bytes) {
+      ensure(1);
+      buffer.put(b);
+    }
+  }
+
+  /**
+   * Drains the buffer if it cannot hold the given number of bytes
+   */
+  private void ensure(int bytes) throws IOException {
+    if (buffer.remaining() < bytes) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,72 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.EMOTION_MAPPER;
+
+/**
+ * Writes the features as text, in the original format:
+ * the values of each block followed by the file name and its emotions, comma separated.
+ *
+ * @author Cyriaque Brousse
+ */
+public class CsvFeatureSink implements FeatureSink {
+
+  private final PrintStream out;
+
+  /** Whether each block is on its own row, or all the blocks of a file on a single row */
+  private final boolean rowPerBlock;
+
+  /**
+   * @param out stream to print to
+   * @param header whether to start with a row of column names
+   * @param rowPerBlock whether each block is on its own row, or all the blocks of a file on a single row
+   */
+  public CsvFeatureSink(PrintStream out, boolean header, boolean rowPerBlock) {
+    this.out = out;
+    this.rowPerBlock = rowPerBlock;
+
+    if (header) {
+      out.print(String.join(",", FeatureSchema.COLUMNS));
+      out.print(',');
+      out.println(String.join(",", FeatureSchema.LABELS));
+    }
+  }
+
+  @Override
+  public void write(String fileName, List<BlockStat> blocks) {
+    final String sample = EmotionMapper.sampleName(fileName);
+
+    // sample -> (coarse_emotion,binary_emotion)
+    final Pair<String, String> emotion = EMOTION_MAPPER.get(sample);
+
+    for (BlockStat block : blocks) {
+      if (emotion == null) {
+        System.err.println("[E] missing mapping for file " + sample);
+        continue;
+      }
+
+      for (Number value : block.values) {
+        out.print(value);
+        out.print(',');
+      }
+      out.print(sample + ",");
+      out.print(emotion.first + ",");
+      out.print(emotion.second);
+
+      if (rowPerBlock) {
+        out.println();
+      }
+    }
+
+    if (!rowPerBlock) {
+      out.println();
+    }
+  }
+
+  @Override
+  public void close() {
+    out.flush();
+  }
+}
@@ -36,4 +36,12 @@ public class EmotionMapper extends HashMap<String, Pair<String, String>> {
 
   }
 
+  /**
+   * @param fileName name of a voice file
+   * @return the sample name: the file name up to its first dot
+   */
+  public static String sampleName(String fileName) {
+    return fileName.contains(".") ? fileName.substring(0, fileName.indexOf(".")) : fileName;
+  }
+
 }
@@ -0,0 +1,456 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.MAX_PITCH;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.MIN_PITCH;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.BANDS_ENERGY_METHOD;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_OVERLAP;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.STATS_MODE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.TONES;
+import static io.mem0r1es.memoit.sensors.external.voice.PitchShifter.WSOLA_OVERLAP_MS;
+import static io.mem0r1es.memoit.sensors.external.voice.PitchShifter.WSOLA_SEEK_WINDOW_MS;
+import static io.mem0r1es.memoit.sensors.external.voice.PitchShifter.WSOLA_SEQUENCE_MS;
+import static io.mem0r1es.memoit.sensors.external.voice.Preprocessor.SILENCE_THRESHOLD_RATIO;
+import static io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline.NUM_CEPSTRUM_COEF;
+
+/**
+ * On-disk cache of the extraction results of each voice file.
+ * <p>
+ * Two kinds of entries are kept, each keyed by a hash of the content of the file and of the parameters
+ * its results depend on, so that changed files or parameters are never served stale results,
+ * and renamed files are still hits:
+ * <ul>
+ *   <li>the block statistics, keyed by all the extraction parameters (frame size, pitch range, silence threshold,
+ *   tones and their reference, pitch shifting, frequency bands, number of cepstrum coefficients,
+ *   accumulation modes, columns);</li>
+ *   <li>the results of the first pass ({@link FirstPass}), keyed by the parameters of that pass only
+ *   (frame size, pitch range, silence threshold, tones), so that they survive changes to the later stages.</li>
+ * </ul>
+ * Labels are not part of an entry: they are joined by the {@link FeatureSink}s when writing.
+ * <p>
+ * The content of a file is hashed once per lookup ({@link #hash(File)}), and the same hash serves both kinds of
+ * entries. A third kind of entry indexes the hash of the content by the path, size and modification time of the
+ * file, so that unchanged files are not read again. As for build tools, a file rewritten with the same size
+ * within the resolution of its modification time is not noticed.
+ * <p>
+ * Entries are written atomically, so that workers may share the cache. On eviction, entries older than
+ * the maximal age are removed, then the least recently used ones until the cache fits its maximal size.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class FeatureCache {
+
+  /**
+   * Results of the first pass of the extraction of a voice file, which the second pass depends on
+   */
+  public static final class FirstPass {
+    /** Mean pitch of the file, before normalisation (Hz) */
+    public final float pitchMean;
+
+    /** First and last non-silent frames */
+    public final int[] firstLastSpokenFrames;
+
+    public FirstPass(float pitchMean, int[] firstLastSpokenFrames) {
+      Preconditions.checkArgument(firstLastSpokenFrames.length == 2,
+         "first-last spoken frame buffer must be of length 2");
+
+      this.pitchMean = pitchMean;
+      this.firstLastSpokenFrames = firstLastSpokenFrames;
+    }
+  }
+
+  /**
+   * Reads the body of an entry
+   */
+  private interface EntryReader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+
+  /**
+   * Writes the body of an entry
+   */
+  private interface EntryWriter<T> {
+    void write(T value, DataOutputStream out) throws IOException;
+  }
+
+  /** Bumped whenever the extraction or the entry format changes */
+  static final int VERSION = 2;
+
+  /** "VFE1": block statistics */
+  static final int BLOCKS_MAGIC = 0x31454656;
+
+  /** "VFP1": results of the first pass */
+  static final int FIRST_PASS_MAGIC = 0x31504656;
+
+  /** "VFH1": hash of the content of a file */
+  static final int CONTENT_MAGIC = 0x31484656;
+
+  static final String ENTRY_EXTENSION = ".entry";
+
+  /** Type tags of the block values, so that they are printed back identically */
+  private static final byte FLOAT = 'F';
+  private static final byte DOUBLE = 'D';
+  private static final byte LONG = 'L';
+
+  private static final HashFunction HASH = Hashing.sha256();
+
+  /** Hashes of the parameters of the first pass, and of the whole extraction, computed once */
+  static final byte[] FIRST_PASS_PARAMETERS = hashFirstPassParameters();
+  static final byte[] BLOCKS_PARAMETERS = hashBlocksParameters();
+
+  private final File directory;
+  private final long maxBytes;
+  private final long maxAgeMillis;
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicInteger firstPassHits = new AtomicInteger();
+  private final AtomicInteger firstPassMisses = new AtomicInteger();
+  private final AtomicInteger contentHits = new AtomicInteger();
+  private final AtomicInteger contentMisses = new AtomicInteger();
+
+  /**
+   * @param directory where entries are stored, created if needed
+   * @param maxBytes maximal total size of the entries, enforced on eviction
+   * @param maxAgeMillis maximal time since an entry was last used, enforced on eviction
+   */
+  public FeatureCache(File directory, long maxBytes, long maxAgeMillis) {
+    Preconditions.checkArgument(directory.isDirectory() || directory.mkdirs(),
+       "could not create cache directory " + directory);
+    Preconditions.checkArgument(maxBytes >= 0 && maxAgeMillis >= 0, "limits must be non-negative");
+
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  /**
+   * Cache configured with {@code -Dvoice.cache=DIR}, {@code -Dvoice.cache.maxBytes=N} (default 1 GiB)
+   * and {@code -Dvoice.cache.maxAgeDays=N} (default 30)
+   *
+   * @return the cache, or {@code null} if no directory is configured
+   */
+  public static FeatureCache fromProperties() {
+    final String directory = System.getProperty("voice.cache");
+    if (directory == null) {
+      return null;
+    }
+
+    return new FeatureCache(new File(directory),
+       Long.getLong("voice.cache.maxBytes", 1L << 30),
+       TimeUnit.DAYS.toMillis(Long.getLong("voice.cache.maxAgeDays", 30L)));
+  }
+
+  /**
+   * @param source voice file
+   * @return the hash of the content of the file, read from the file only if its path, size or modification time
+   *         are not indexed yet
+   */
+  public HashCode hash(File source) throws Exception {
+    final String key = HASH.newHasher()
+       .putInt(CONTENT_MAGIC)
+       .putString(source.getAbsolutePath(), StandardCharsets.UTF_8)
+       .putLong(source.length())
+       .putLong(source.lastModified())
+       .hash().toString();
+
+    return get(key, CONTENT_MAGIC, () -> hashContent(source),
+       FeatureCache::readContent, FeatureCache::writeContent, contentHits, contentMisses);
+  }
+
+  /**
+   * @param content hash of the content of the voice file, see {@link #hash(File)}
+   * @param extraction computes the block statistics of the file, on a miss
+   * @return the cached block statistics of the file, or the ones computed and then cached.
+   *         The computed statistics are returned even if they could not be cached.
+   */
+  public List<BlockStat> get(HashCode content, Callable<List<BlockStat>> extraction) throws Exception {
+    return get(content, BLOCKS_PARAMETERS, extraction);
+  }
+
+  /**
+   * @param parameters hash of the parameters the block statistics depend on
+   * @see #get(HashCode, Callable)
+   */
+  List<BlockStat> get(HashCode content, byte[] parameters, Callable<List<BlockStat>> extraction) throws Exception {
+    return get(key(content, parameters), BLOCKS_MAGIC, extraction,
+       FeatureCache::readBlocks, FeatureCache::writeBlocks, hits, misses);
+  }
+
+  /**
+   * @param content hash of the content of the voice file, see {@link #hash(File)}
+   * @param firstPass computes the results of the first pass on the file, on a miss
+   * @return the cached results of the first pass on the file, or the ones computed and then cached.
+   *         The computed results are returned even if they could not be cached.
+   */
+  public FirstPass getFirstPass(HashCode content, Callable<FirstPass> firstPass) throws Exception {
+    return get(key(content, FIRST_PASS_PARAMETERS), FIRST_PASS_MAGIC, firstPass,
+       FeatureCache::readFirstPass, FeatureCache::writeFirstPass, firstPassHits, firstPassMisses);
+  }
+
+  /**
+   * Removes the entries older than the maximal age, then the least recently used ones
+   * until the cache fits its maximal size
+   */
+  public void evict() {
+    final File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_EXTENSION));
+    if (files == null) {
+      return;
+    }
+
+    final long now = System.currentTimeMillis();
+    final List<File> entries = new ArrayList<>();
+    long size = 0L;
+    int evicted = 0;
+
+    for (File file : files) {
+      if (now - file.lastModified() > maxAgeMillis) {
+        evicted += file.delete() ? 1 : 0;
+      } else {
+        entries.add(file);
+        size += file.length();
+      }
+    }
+
+    // least recently used first
+    Collections.sort(entries, Comparator.comparingLong(File::lastModified));
+    for (File file : entries) {
+      if (size <= maxBytes) {
+        break;
+      }
+      final long length = file.length();
+      if (file.delete()) {
+        size -= length;
+        evicted++;
+      }
+    }
+
+    System.err.printf("[C] cache: %d hits, %d misses, first pass: %d hits, %d misses, "
+       + "%d files hashed, %d entries evicted%n",
+       hits.get(), misses.get(), firstPassHits.get(), firstPassMisses.get(), contentMisses.get(), evicted);
+  }
+
+  /* **********************************
+                   Helpers
+     ********************************** */
+
+  /**
+   * Looks an entry up, or computes it and caches it on a miss
+   */
+  private <T> T get(String key, int magic, Callable<T> extraction,
+                    EntryReader<T> reader, EntryWriter<T> writer,
+                    AtomicInteger hits, AtomicInteger misses) throws Exception {
+    final File file = new File(directory, key + ENTRY_EXTENSION);
+
+    if (file.isFile()) {
+      try {
+        final T value = read(file, magic, reader);
+        file.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        return value;
+      } catch (IOException | RuntimeException e) {
+        System.err.println("[E] dropping invalid cache entry " + file + ": " + e);
+        file.delete();
+      }
+    }
+
+    misses.incrementAndGet();
+    final T value = extraction.call();
+    try {
+      write(value, file, magic, writer);
+    } catch (IOException e) {
+      System.err.println("[E] could not write cache entry " + file + ": " + e);
+    }
+    return value;
+  }
+
+  /**
+   * @return the hex-encoded hash of the content of the file and of the parameters
+   */
+  private static String key(HashCode content, byte[] parameters) {
+    return HASH.newHasher().putBytes(parameters).putBytes(content.asBytes()).hash().toString();
+  }
+
+  private static HashCode hashContent(File source) throws IOException {
+    final Hasher hasher = HASH.newHasher();
+    try (InputStream in = new FileInputStream(source)) {
+      ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Parameters of the first pass: pitch detection and silence bounds
+   */
+  private static Hasher putFirstPassParameters(Hasher hasher) {
+    hasher
+       .putInt(VERSION)
+       .putInt(SAMPLING_RATE)
+       .putInt(FRAME_SIZE)
+       .putInt(FRAME_OVERLAP)
+       .putInt(MIN_PITCH)
+       .putInt(MAX_PITCH)
+       .putDouble(SILENCE_THRESHOLD_RATIO);
+
+    hasher.putFloat(TONES.getReference());
+    for (float tone : TONES) {
+      hasher.putFloat(tone);
+    }
+
+    return hasher;
+  }
+
+  private static byte[] hashFirstPassParameters() {
+    return putFirstPassParameters(HASH.newHasher()).hash().asBytes();
+  }
+
+  /**
+   * Parameters of the whole extraction: those of the first pass, pitch shifting, and block statistics
+   */
+  private static byte[] hashBlocksParameters() {
+    final Hasher hasher = putFirstPassParameters(HASH.newHasher())
+       .putInt(WSOLA_SEQUENCE_MS)
+       .putInt(WSOLA_SEEK_WINDOW_MS)
+       .putInt(WSOLA_OVERLAP_MS)
+       .putInt(NUM_CEPSTRUM_COEF)
+       .putString(BANDS_ENERGY_METHOD.name(), StandardCharsets.UTF_8)
+       .putString(STATS_MODE.name(), StandardCharsets.UTF_8);
+
+    for (Pair<Float, Float> band : FREQUENCY_BANDS) {
+      hasher.putFloat(band.first).putFloat(band.second);
+    }
+
+    for (String column : FeatureSchema.COLUMNS) {
+      hasher.putString(column, StandardCharsets.UTF_8);
+    }
+
+    return hasher.hash().asBytes();
+  }
+
+  private static <T> T read(File file, int magic, EntryReader<T> reader) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      Preconditions.checkState(in.readInt() == magic, "not a cache entry of this kind");
+      Preconditions.checkState(in.readInt() == VERSION, "stale cache entry");
+      return reader.read(in);
+    }
+  }
+
+  /**
+   * Writes the entry to a temporary file, then moves it in place. The temporary file is deleted on failure.
+   */
+  private <T> void write(T value, File file, int magic, EntryWriter<T> writer) throws IOException {
+    final File temporary = File.createTempFile("entry", ".tmp", directory);
+
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+        out.writeInt(magic);
+        out.writeInt(VERSION);
+        writer.write(value, out);
+      }
+
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      temporary.delete();
+    }
+  }
+
+  /* **********************************
+                Entry formats
+     ********************************** */
+
+  private static HashCode readContent(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[HASH.bits() / Byte.SIZE];
+    in.readFully(bytes);
+    return HashCode.fromBytes(bytes);
+  }
+
+  private static void writeContent(HashCode content, DataOutputStream out) throws IOException {
+    out.write(content.asBytes());
+  }
+
+  private static FirstPass readFirstPass(DataInputStream in) throws IOException {
+    final float pitchMean = in.readFloat();
+    final int[] firstLastSpokenFrames = {in.readInt(), in.readInt()};
+    return new FirstPass(pitchMean, firstLastSpokenFrames);
+  }
+
+  private static void writeFirstPass(FirstPass firstPass, DataOutputStream out) throws IOException {
+    out.writeFloat(firstPass.pitchMean);
+    out.writeInt(firstPass.firstLastSpokenFrames[0]);
+    out.writeInt(firstPass.firstLastSpokenFrames[1]);
+  }
+
+  private static List<BlockStat> readBlocks(DataInputStream in) throws IOException {
+    final int blocks = in.readInt();
+    final int columns = in.readInt();
+    Preconditions.checkState(columns == FeatureSchema.COLUMNS.size(), "schema mismatch");
+
+    final List<BlockStat> stats = new ArrayList<>(blocks);
+    for (int i = 0; i < blocks; i++) {
+      final long startId = in.readLong();
+      final Number[] values = new Number[columns];
+      for (int c = 0; c < columns; c++) {
+        final byte type = in.readByte();
+        switch (type) {
+          case FLOAT:  values[c] = in.readFloat();  break;
+          case DOUBLE: values[c] = in.readDouble(); break;
+          case LONG:   values[c] = in.readLong();   break;
+          default: throw new IOException("unknown value type " + type);
+        }
+      }
+      stats.add(new BlockStat(startId, values));
+    }
+    return stats;
+  }
+
+  private static void writeBlocks(List<BlockStat> blocks, DataOutputStream out) throws IOException {
+    out.writeInt(blocks.size());
+    out.writeInt(FeatureSchema.COLUMNS.size());
+
+    for (BlockStat block : blocks) {
+      out.writeLong(block.startId);
+      for (Number value : block.values) {
+        if (value instanceof Float) {
+          out.writeByte(FLOAT);
+          out.writeFloat(value.floatValue());
+        } else if (value instanceof Long) {
+          out.writeByte(LONG);
+          out.writeLong(value.longValue());
+        } else {
+          out.writeByte(DOUBLE);
+          out.writeDouble(value.doubleValue());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline.NUM_CEPSTRUM_COEF;
+
+/**
+ * Names and order of the columns of a {@link BlockStat}, computed once.
+ * The order is the one of the original CSV rows: pitch, energy, bands energy, then MFCC statistics.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class FeatureSchema {
+
+  /** Statistics on the energy of each band, prefixed by {@code band<center>_} */
+  private static final String[] BAND_STATS = {
+     "energyMean", "energyMedian", "energyStdDev", "energyMax", "energyRange", "energyRatio"
+  };
+
+  /** Statistics on each cepstrum coefficient, prefixed by {@code mfcc<i>_} */
+  private static final String[] MFCC_STATS = {
+     "mean", "median", "stdDev", "max", "range", "derivMean", "derivMedian", "derivStdDev", "derivMax", "derivRange"
+  };
+
+  /**
+   * Indexes in {@code FREQUENCY_BANDS} of the bands, in column order.
+   * Bands were historically iterated through a hash map keyed by their center; that order is kept.
+   */
+  static final int[] BAND_ORDER = initBandOrder();
+
+  /** Column names of each band statistic: {@code BAND_COLUMNS[band][stat]}, band indexed as in {@code FREQUENCY_BANDS} */
+  static final String[][] BAND_COLUMNS = initBandColumns();
+
+  /** Column names of each MFCC statistic: {@code MFCC_COLUMNS[coefficient][stat]} */
+  static final String[][] MFCC_COLUMNS = initMfccColumns();
+
+  /** Names of the feature columns, in order */
+  public static final ImmutableList<String> COLUMNS = initColumns();
+
+  /** Names of the label columns, appended to the feature columns: sample, coarse and binary emotions */
+  public static final ImmutableList<String> LABELS = ImmutableList.of("file", "coarseEmotion", "binaryEmotion");
+
+  private static final Map<String, Integer> INDEXES = initIndexes();
+
+  private FeatureSchema() { }
+
+  /**
+   * @param column a feature column name
+   * @return its index in {@link #COLUMNS}
+   */
+  public static int indexOf(String column) {
+    final Integer index = INDEXES.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException("unknown column " + column);
+    }
+    return index;
+  }
+
+  private static int[] initBandOrder() {
+    final Map<Float, Integer> bandsByCenter = new HashMap<>();
+    for (int i = 0; i < FREQUENCY_BANDS.size(); ++i) {
+      bandsByCenter.put(FREQUENCY_BANDS.get(i).first, i);
+    }
+
+    final int[] order = new int[FREQUENCY_BANDS.size()];
+    int i = 0;
+    for (int band : bandsByCenter.values()) {
+      order[i++] = band;
+    }
+    return order;
+  }
+
+  private static String[][] initBandColumns() {
+    final String[][] columns = new String[FREQUENCY_BANDS.size()][BAND_STATS.length];
+    for (int band = 0; band < columns.length; ++band) {
+      final String prefix = "band" + FREQUENCY_BANDS.get(band).first + '_';
+      for (int stat = 0; stat < BAND_STATS.length; ++stat) {
+        columns[band][stat] = prefix + BAND_STATS[stat];
+      }
+    }
+    return columns;
+  }
+
+  private static String[][] initMfccColumns() {
+    final String[][] columns = new String[NUM_CEPSTRUM_COEF][MFCC_STATS.length];
+    for (int i = 0; i < NUM_CEPSTRUM_COEF; ++i) {
+      final String prefix = "mfcc" + i + '_';
+      for (int stat = 0; stat < MFCC_STATS.length; ++stat) {
+        columns[i][stat] = prefix + MFCC_STATS[stat];
+      }
+    }
+    return columns;
+  }
+
+  private static ImmutableList<String> initColumns() {
+    final ImmutableList.Builder<String> columns = ImmutableList.builder();
+
+    columns.add("pitchMean", "pitchMedian", "pitchStdDev", "pitchMax", "pitchRange",
+       "pitchUpSlopeMedian", "pitchUpSlopeMean", "pitchDownSlopeMedian", "pitchDownSlopeMean",
+       "pitchUpFramesRatio", "pitchVoicedFramesRatio",
+       "pitchPeaksNum", "pitchPeaksMean", "pitchPeaksStdDev", "pitchPeaksRange",
+       "pitchPeaksDistMean", "pitchPeaksDistStdDev", "pitchPeaksDistRange", "pitchPeaksDistMin");
+
+    columns.add("energyMean", "energyMedian", "energyStdDev", "energyMax", "energyRange",
+       "energyUpSlopeMedian", "energyDownSlopeMedian", "energyUpFramesRatio");
+
+    for (int band : BAND_ORDER) {
+      columns.add(BAND_COLUMNS[band]);
+    }
+
+    for (String[] coefficient : MFCC_COLUMNS) {
+      columns.add(coefficient);
+    }
+
+    return columns.build();
+  }
+
+  private static Map<String, Integer> initIndexes() {
+    final Map<String, Integer> indexes = new HashMap<>();
+    for (int i = 0; i < COLUMNS.size(); ++i) {
+      indexes.put(COLUMNS.get(i), i);
+    }
+    return indexes;
+  }
+}
@@ -0,0 +1,25 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the extracted features.
+ * Each block is written with the columns of {@link FeatureSchema#COLUMNS},
+ * followed by the ones of {@link FeatureSchema#LABELS}, joined from the emotion mapping.
+ *
+ * @author Cyriaque Brousse
+ */
+public interface FeatureSink extends Closeable {
+
+  /**
+   * Writes the blocks extracted from a voice file.
+   * Blocks of a file without emotion mapping are reported and skipped.
+   *
+   * @param fileName name of the voice file
+   * @param blocks its blocks, in order
+   */
+  void write(String fileName, List<BlockStat> blocks) throws IOException;
+
+}
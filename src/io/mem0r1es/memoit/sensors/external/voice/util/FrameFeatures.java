@@ -0,0 +1,29 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline.NUM_CEPSTRUM_COEF;
+
+/**
+ * Features extracted on a single frame.
+ * Instances are meant to be reused from frame to frame.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class FrameFeatures {
+
+  /** Pitch (Hz), {@code NaN} if the frame is unvoiced or out of the allowed pitch interval */
+  public float pitch = Float.NaN;
+
+  /** Energy of the frame */
+  public float energy;
+
+  /** Energy of each band, in the order of {@code FREQUENCY_BANDS} */
+  public final float[] bandsEnergy = new float[FREQUENCY_BANDS.size()];
+
+  /** Cepstrum coefficients */
+  public final float[] mfcc = new float[NUM_CEPSTRUM_COEF];
+
+  public boolean isVoiced() {
+    return !Float.isNaN(pitch);
+  }
+}
@@ -0,0 +1,222 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory {@link MetricsRegistry}, dumped as JSON or in the Prometheus text format.
+ * Histograms have log-linear buckets: each power of two is split into {@value #SUB_BUCKETS} buckets,
+ * so that quantiles are reported with a relative error below 1/{@value #SUB_BUCKETS}, in constant memory.
+ *
+ * @author Cyriaque Brousse
+ */
+public class HistogramRegistry implements MetricsRegistry {
+
+  /**
+   * Output formats
+   */
+  public enum Format {
+    JSON,
+    PROMETHEUS
+  }
+
+  /** Prefix of the metric names in the Prometheus format */
+  private static final String PROMETHEUS_PREFIX = "voice_";
+
+  /** Reported quantiles, and their names in the JSON format */
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final Format format;
+
+  private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, Double> gauges = new ConcurrentHashMap<>();
+
+  public HistogramRegistry(Format format) {
+    this.format = format;
+  }
+
+  @Override
+  public void record(String name, long value) {
+    histograms.computeIfAbsent(name, n -> new Histogram()).record(value);
+  }
+
+  @Override
+  public void increment(String name, long delta) {
+    counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+  }
+
+  @Override
+  public long getCount(String name) {
+    final LongAdder counter = counters.get(name);
+    return counter == null ? 0L : counter.sum();
+  }
+
+  @Override
+  public void set(String name, double value) {
+    gauges.put(name, value);
+  }
+
+  @Override
+  public void dump(PrintStream out) {
+    if (format == Format.JSON) {
+      dumpJson(out);
+    } else {
+      dumpPrometheus(out);
+    }
+    out.flush();
+  }
+
+  /* **********************************
+                   Formats
+     ********************************** */
+
+  private void dumpJson(PrintStream out) {
+    out.println("{");
+
+    out.println("  \"histograms\": {");
+    String separator = "";
+    for (Map.Entry<String, Histogram> histogram : new TreeMap<>(histograms).entrySet()) {
+      final Histogram h = histogram.getValue();
+      out.print(separator);
+      out.printf("    \"%s\": {\"count\": %d, \"sum\": %d, \"mean\": %s, \"max\": %d",
+         histogram.getKey(), h.count.sum(), h.sum.sum(), h.mean(), h.max.get());
+      for (int q = 0; q < QUANTILES.length; q++) {
+        out.printf(", \"%s\": %d", QUANTILE_NAMES[q], h.quantile(QUANTILES[q]));
+      }
+      out.print("}");
+      separator = ",\n";
+    }
+    out.println();
+    out.println("  },");
+
+    out.println("  \"counters\": {");
+    separator = "";
+    for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+      out.print(separator);
+      out.printf("    \"%s\": %d", counter.getKey(), counter.getValue().sum());
+      separator = ",\n";
+    }
+    out.println();
+    out.println("  },");
+
+    out.println("  \"gauges\": {");
+    separator = "";
+    for (Map.Entry<String, Double> gauge : new TreeMap<>(gauges).entrySet()) {
+      out.print(separator);
+      out.printf("    \"%s\": %s", gauge.getKey(), jsonNumber(gauge.getValue()));
+      separator = ",\n";
+    }
+    out.println();
+    out.println("  }");
+
+    out.println("}");
+  }
+
+  private void dumpPrometheus(PrintStream out) {
+    for (Map.Entry<String, Histogram> histogram : new TreeMap<>(histograms).entrySet()) {
+      final String name = PROMETHEUS_PREFIX + histogram.getKey();
+      final Histogram h = histogram.getValue();
+      out.println("# TYPE " + name + " summary");
+      for (double quantile : QUANTILES) {
+        out.println(name + "{quantile=\"" + quantile + "\"} " + h.quantile(quantile));
+      }
+      out.println(name + "_sum " + h.sum.sum());
+      out.println(name + "_count " + h.count.sum());
+    }
+
+    for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+      final String name = PROMETHEUS_PREFIX + counter.getKey() + "_total";
+      out.println("# TYPE " + name + " counter");
+      out.println(name + " " + counter.getValue().sum());
+    }
+
+    for (Map.Entry<String, Double> gauge : new TreeMap<>(gauges).entrySet()) {
+      final String name = PROMETHEUS_PREFIX + gauge.getKey();
+      out.println("# TYPE " + name + " gauge");
+      out.println(name + " " + gauge.getValue());
+    }
+  }
+
+  private static String jsonNumber(double value) {
+    return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+  }
+
+  /* **********************************
+                  Histogram
+     ********************************** */
+
+  /**
+   * Log-linear histogram of non-negative values, lock-free
+   */
+  private static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+      value = Math.max(0L, value);
+      buckets.incrementAndGet(bucket(value));
+      count.increment();
+      sum.add(value);
+      max.accumulateAndGet(value, Math::max);
+    }
+
+    double mean() {
+      final long n = count.sum();
+      return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the quantile
+     */
+    long quantile(double quantile) {
+      final long rank = (long) Math.ceil(quantile * count.sum());
+      long seen = 0L;
+      for (int b = 0; b < BUCKETS; b++) {
+        seen += buckets.get(b);
+        if (seen >= rank && seen > 0) {
+          return Math.min(upperBound(b), max.get());
+        }
+      }
+      return max.get();
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} have their own bucket. Above, each power of two
+     * {@code [2^e, 2^(e+1))} is split into {@link #SUB_BUCKETS} buckets of equal width.
+     */
+    static int bucket(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      final int exponent = 63 - Long.numberOfLeadingZeros(value);
+      final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      final long sub = bucket % SUB_BUCKETS;
+      return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int bucket) {
+      return bucket + 1 < BUCKETS ? lowerBound(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+  }
+}
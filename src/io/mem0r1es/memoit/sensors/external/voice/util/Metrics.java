@@ -0,0 +1,215 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Instrumentation of the extraction pipeline.
+ * <p>
+ * Enabled with {@code -Dvoice.metrics=json}, {@code -Dvoice.metrics=prometheus} (see {@link HistogramRegistry}),
+ * or the class name of another {@link MetricsRegistry}. The metrics are dumped at the end of the run,
+ * to the standard error or to the file given by {@code -Dvoice.metrics.out=FILE}.
+ * <p>
+ * Memory is reported per file as the bytes allocated by the thread extracting it, which is meaningful even when
+ * files are processed in parallel, and per run as the heap high-water (see {@link #HEAP_HIGH_WATER_BYTES}).
+ * <p>
+ * When disabled, {@link #ENABLED} is a {@code false} constant: the probes are reduced to nothing by the JIT,
+ * and no clock is read.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class Metrics {
+
+  /** Registry the metrics are recorded to, {@code null} if disabled */
+  public static final MetricsRegistry REGISTRY = fromProperties();
+
+  /** Whether metrics are recorded */
+  public static final boolean ENABLED = REGISTRY != null;
+
+  /* **********************************
+                Metric names
+     ********************************** */
+
+  /**
+   * Per file: whole extraction, decoding, first pass (pitch and silence), second pass (normalisation and blocks).
+   * Windows are streamed in a single pass, recorded as the second one, decoding included.
+   */
+  public static final String FILE_NANOS = "file_nanos";
+  public static final String DECODE_NANOS = "decode_nanos";
+  public static final String FIRST_PASS_NANOS = "first_pass_nanos";
+  public static final String SECOND_PASS_NANOS = "second_pass_nanos";
+
+  /** Per file: bytes allocated by the extracting thread */
+  public static final String FILE_ALLOCATED_BYTES = "file_allocated_bytes";
+
+  /** Silence preprocessing: per frame, and computation of the bounds per file */
+  public static final String PREPROCESSOR_FRAME_NANOS = "preprocessor_frame_nanos";
+  public static final String PREPROCESSOR_BOUNDS_NANOS = "preprocessor_bounds_nanos";
+
+  /**
+   * Per frame: whole feature analysis, and each feature. The accumulation into the statistics is not part of
+   * the analysis, in blocks as in windows: see {@link #STATS_ADD_NANOS}.
+   */
+  public static final String FRAME_NANOS = "frame_nanos";
+  public static final String PITCH_NANOS = "pitch_nanos";
+  public static final String ENERGY_NANOS = "energy_nanos";
+  public static final String BANDS_NANOS = "bands_nanos";
+  public static final String MFCC_NANOS = "mfcc_nanos";
+
+  /** Per window: from the arrival of its last frame to its hand-over, its statistics included */
+  public static final String WINDOW_LATENCY_NANOS = "window_latency_nanos";
+
+  /** Statistics: accumulation of a frame, and computation of a block */
+  public static final String STATS_ADD_NANOS = "stats_add_nanos";
+  public static final String STATS_BUILD_NANOS = "stats_build_nanos";
+
+  /** Counters */
+  public static final String FILES = "files";
+  public static final String FRAMES = "frames";
+  public static final String BYTES_DECODED = "bytes_decoded";
+  public static final String SAMPLES_DECODED = "samples_decoded";
+
+  /** Gauges, set at the end of the run */
+  public static final String RUN_SECONDS = "run_seconds";
+  public static final String FRAMES_PER_SECOND = "frames_per_second";
+  public static final String REAL_TIME_FACTOR = "real_time_factor";
+
+  /**
+   * Gauge set at the end of the run: sum of the peak usages of the heap memory pools since the metrics were enabled.
+   * The pools may peak at different times, so this is an upper bound of the heap high-water.
+   */
+  public static final String HEAP_HIGH_WATER_BYTES = "heap_high_water_bytes";
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  static {
+    if (ENABLED) {
+      // the high-water is that of the run
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+          pool.resetPeakUsage();
+        }
+      }
+    }
+  }
+
+  private Metrics() { }
+
+  /* **********************************
+                   Probes
+     ********************************** */
+
+  /**
+   * @return the start time of a stage, to be given to {@link #stop(String, long)}
+   */
+  public static long start() {
+    return ENABLED ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Records the duration of a stage
+   *
+   * @param name name of the latency histogram
+   * @param start as returned by {@link #start()}
+   */
+  public static void stop(String name, long start) {
+    if (ENABLED) {
+      REGISTRY.record(name, System.nanoTime() - start);
+    }
+  }
+
+  public static void increment(String name, long delta) {
+    if (ENABLED) {
+      REGISTRY.increment(name, delta);
+    }
+  }
+
+  public static void record(String name, long value) {
+    if (ENABLED) {
+      REGISTRY.record(name, value);
+    }
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread so far, or {@code -1} if not supported
+   */
+  public static long allocatedBytes() {
+    if (ENABLED && THREADS instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1L;
+  }
+
+  /* **********************************
+                  End of run
+     ********************************** */
+
+  /**
+   * Sets the throughput gauges of the run, then dumps the metrics
+   *
+   * @param runNanos wall duration of the run
+   */
+  public static void finish(long runNanos) {
+    if (!ENABLED) {
+      return;
+    }
+
+    final double seconds = runNanos / 1e9;
+    REGISTRY.set(RUN_SECONDS, seconds);
+    REGISTRY.set(FRAMES_PER_SECOND, REGISTRY.getCount(FRAMES) / seconds);
+    REGISTRY.set(REAL_TIME_FACTOR, (double) REGISTRY.getCount(SAMPLES_DECODED) / SAMPLING_RATE / seconds);
+    REGISTRY.set(HEAP_HIGH_WATER_BYTES, heapPeakUsage());
+
+    final String path = System.getProperty("voice.metrics.out");
+    if (path == null) {
+      REGISTRY.dump(System.err);
+      return;
+    }
+
+    try (PrintStream out = new PrintStream(new FileOutputStream(path))) {
+      REGISTRY.dump(out);
+    } catch (FileNotFoundException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * @return the sum of the peak usages of the heap memory pools (bytes)
+   */
+  private static long heapPeakUsage() {
+    long peak = 0L;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  private static MetricsRegistry fromProperties() {
+    final String registry = System.getProperty("voice.metrics");
+    if (registry == null) {
+      return null;
+    }
+
+    switch (registry) {
+      case "json":
+        return new HistogramRegistry(HistogramRegistry.Format.JSON);
+      case "prometheus":
+        return new HistogramRegistry(HistogramRegistry.Format.PROMETHEUS);
+      default:
+        try {
+          return (MetricsRegistry) Class.forName(registry).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+          throw new IllegalArgumentException("could not instantiate metrics registry " + registry, e);
+        }
+    }
+  }
+}
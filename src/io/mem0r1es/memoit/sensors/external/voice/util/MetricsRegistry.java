@@ -0,0 +1,41 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.PrintStream;
+
+/**
+ * Destination of the pipeline metrics, see {@link Metrics}.
+ * Implementations must be thread-safe, as files are processed in parallel.
+ *
+ * @author Cyriaque Brousse
+ */
+public interface MetricsRegistry {
+
+  /**
+   * Records a value in a histogram
+   *
+   * @param name name of the histogram, suffixed by its unit (e.g. {@code _nanos})
+   * @param value the value
+   */
+  void record(String name, long value);
+
+  /**
+   * Adds to a counter
+   */
+  void increment(String name, long delta);
+
+  /**
+   * @return the current value of a counter, zero if it was never incremented
+   */
+  long getCount(String name);
+
+  /**
+   * Sets a gauge
+   */
+  void set(String name, double value);
+
+  /**
+   * Writes all the metrics
+   */
+  void dump(PrintStream out);
+
+}
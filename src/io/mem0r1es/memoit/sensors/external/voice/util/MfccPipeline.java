@@ -1,5 +1,7 @@
 package io.mem0r1es.memoit.sensors.external.voice.util;
 
+import com.google.common.base.Preconditions;
+
 import be.tarsos.dsp.util.fft.FFT;
 
 import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.WINDOW_FUNCTION;
@@ -7,7 +9,12 @@ import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
 import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
 
 /**
- * Collection of utilities needed for MFCC processing
+ * Collection of utilities needed for MFCC processing.
+ * <p>
+ * The mel filter weights and the DCT matrix are computed once and shared. Each instance holds its own
+ * FFT and work buffers, so no allocation happens per frame, and an instance must not be shared between threads.
+ * The weights are computed with the same float operations as a direct evaluation of the filters and of the DCT,
+ * so that the coefficients are expected to be bit-for-bit the same; {@code MfccPipelineTest} checks it.
  *
  * @author Cyriaque Brousse
  */
@@ -29,38 +36,108 @@ public class MfccPipeline {
   /** Upper bound of MFCC filter bank */
   private static final float MFCC_UPPER_FILTER_FREQ = SAMPLING_RATE / 2f;
 
-  /** Fast Fourier transform, needed for MFCC */
-  private static final FFT FFT = new FFT(FRAME_SIZE, WINDOW_FUNCTION);
+  /** Floor of the log of the mel filters output */
+  private static final float LOG_FLOOR = -50f;
 
   /** MFCC filter bank */
-  private final int[] centerFrequencies = new int[NUM_MEL_FILTERS + 2];
+  private static final int[] CENTER_FREQUENCIES = initCenterFrequencies();
+
+  /** For each mel filter k (1-indexed), weights of the bins on its rising edge, from center k-1 to center k */
+  private static final float[][] RISING_WEIGHTS = new float[NUM_MEL_FILTERS + 1][];
+
+  /** For each mel filter k (1-indexed), normalisation of its rising edge */
+  private static final float[] RISING_NORMS = new float[NUM_MEL_FILTERS + 1];
+
+  /** For each mel filter k (1-indexed), weights of the bins on its falling edge, from center k to center k+1 */
+  private static final float[][] FALLING_WEIGHTS = new float[NUM_MEL_FILTERS + 1][];
+
+  static {
+    initMelWeights();
+  }
+
+  /** DCT matrix: {@code DCT[i][j] = cos(pi * i / NUM_MEL_FILTERS * (j + 0.5))} */
+  private static final double[][] DCT = initDct();
+
+  /* **********************************
+              Per-instance state
+     ********************************** */
+
+  /** Fast Fourier transform, needed for MFCC. Not shared, as it is stateful. */
+  private final FFT FFT = new FFT(FRAME_SIZE, WINDOW_FUNCTION);
+
+  /** Copy of the frame, windowed and transformed in place by the FFT */
+  private final float[] fftBuffer = new float[FRAME_SIZE];
+
+  /** Magnitude spectrum of the last processed frame */
+  private final float[] spectrum = new float[FRAME_SIZE];
+
+  /** Log of the output of the mel filters */
+  private final float[] logBank = new float[NUM_MEL_FILTERS];
 
   /* **********************************
             Constructor & Pipeline
      ********************************** */
 
-  public MfccPipeline() {
-    initCenterFrequencies();
-  }
+  public MfccPipeline() { }
 
   /**
    * Runs the MFCC pipeline on the provided audio buffer
    *
-   * @param frame audio buffer to process
+   * @param frame audio buffer to process, left untouched
    * @return the array of MFCCs
    */
   public float[] process(float[] frame) {
-    float[] bin = magnitudeSpectrum(frame);
-    float[] bank = melFilter(bin);
-    float[] transformation = nonLinearTransformation(bank);
-    return cepstralCoefficients(transformation);
+    final float[] coefficients = new float[NUM_CEPSTRUM_COEF];
+    process(frame, coefficients);
+    return coefficients;
+  }
+
+  /**
+   * Runs the MFCC pipeline on the provided audio buffer, without allocating
+   *
+   * @param frame audio buffer to process, left untouched
+   * @param coefficients output buffer of size {@link #NUM_CEPSTRUM_COEF}, receives the MFCCs
+   */
+  public void process(float[] frame, float[] coefficients) {
+    Preconditions.checkArgument(frame.length == FRAME_SIZE, "frame must be of size " + FRAME_SIZE);
+    final long start = Metrics.start();
+
+    magnitudeSpectrum(frame);
+    melFilter();
+    cepstralCoefficients(coefficients);
+
+    Metrics.stop(Metrics.MFCC_NANOS, start);
+  }
+
+  /**
+   * Runs the MFCC pipeline on a batch of audio buffers
+   *
+   * @param frames audio buffers to process, left untouched
+   * @param coefficients output buffers, one per frame, receive the MFCCs
+   */
+  public void processBatch(float[][] frames, float[][] coefficients) {
+    Preconditions.checkArgument(frames.length <= coefficients.length, "not enough output buffers");
+
+    for (int i = 0; i < frames.length; i++) {
+      process(frames[i], coefficients[i]);
+    }
+  }
+
+  /**
+   * @return the magnitude spectrum of the last processed (windowed) frame.
+   *         Its first {@code FRAME_SIZE/2} values are the bins {@code 0..FRAME_SIZE/2-1}.
+   *         Overwritten by the next frame.
+   */
+  public float[] getMagnitudeSpectrum() {
+    return spectrum;
   }
 
   /* **********************************
                    Helpers
      ********************************** */
 
-  private void initCenterFrequencies() {
+  private static int[] initCenterFrequencies() {
+    final int[] centerFrequencies = new int[NUM_MEL_FILTERS + 2];
     centerFrequencies[0] = Math.round(MFCC_LOWER_FILTER_FREQ / SAMPLING_RATE * FRAME_SIZE);
     centerFrequencies[centerFrequencies.length - 1] = FRAME_SIZE / 2;
 
@@ -74,110 +151,109 @@ public class MfccPipeline {
       float fc = (inverseMel(mel[0] + factor * i) / SAMPLING_RATE) * FRAME_SIZE;
       centerFrequencies[i - 1] = Math.round(fc);
     }
+
+    return centerFrequencies;
+  }
+
+  /**
+   * Computes the weights of the mel filters, with the same float operations as a direct evaluation
+   */
+  private static void initMelWeights() {
+    final int[] cf = CENTER_FREQUENCIES;
+
+    for (int k = 1; k <= NUM_MEL_FILTERS; k++) {
+      RISING_NORMS[k] = (cf[k] - cf[k - 1] + 1);
+      RISING_WEIGHTS[k] = new float[Math.max(0, cf[k] - cf[k - 1] + 1)];
+      for (int i = cf[k - 1]; i <= cf[k]; i++) {
+        RISING_WEIGHTS[k][i - cf[k - 1]] = (i - cf[k - 1] + 1);
+      }
+
+      final float den = (cf[k + 1] - cf[k] + 1);
+      FALLING_WEIGHTS[k] = new float[Math.max(0, cf[k + 1] - cf[k])];
+      for (int i = cf[k] + 1; i <= cf[k + 1]; i++) {
+        FALLING_WEIGHTS[k][i - cf[k] - 1] = (1 - ((i - cf[k]) / den));
+      }
+    }
+  }
+
+  private static double[][] initDct() {
+    final double[][] dct = new double[NUM_CEPSTRUM_COEF][NUM_MEL_FILTERS];
+    for (int i = 0; i < NUM_CEPSTRUM_COEF; i++) {
+      for (int j = 0; j < NUM_MEL_FILTERS; j++) {
+        dct[i][j] = Math.cos(Math.PI * i / NUM_MEL_FILTERS * (j + 0.5));
+      }
+    }
+    return dct;
   }
 
   /**
    * convert frequency to mel-frequency
    */
-  private float freqToMel(float freq) {
+  private static float freqToMel(float freq) {
     return (float) (2595 * Math.log10(1 + freq / 700));
   }
 
   /**
    * calculates the inverse of Mel Frequency
    */
-  private float inverseMel(double x) {
+  private static float inverseMel(double x) {
     return (float) (700 * (Math.pow(10, x / 2595) - 1));
   }
 
   /**
    * computes the magnitude spectrum of the input frame
    */
-  private float[] magnitudeSpectrum(float[] frame) {
-    float spectrum[] = new float[frame.length];
-
-    FFT.forwardTransform(frame);
+  private void magnitudeSpectrum(float[] frame) {
+    System.arraycopy(frame, 0, fftBuffer, 0, FRAME_SIZE);
+    FFT.forwardTransform(fftBuffer);
 
     // calculate magnitude spectrum
-    for (int i = 0; i < frame.length / 2; i++) {
-      spectrum[frame.length / 2 + i] = FFT.modulus(frame, frame.length / 2 - 1 - i);
-      spectrum[frame.length / 2 - 1 - i] = spectrum[frame.length / 2 + i];
+    for (int i = 0; i < FRAME_SIZE / 2; i++) {
+      spectrum[FRAME_SIZE / 2 + i] = FFT.modulus(fftBuffer, FRAME_SIZE / 2 - 1 - i);
+      spectrum[FRAME_SIZE / 2 - 1 - i] = spectrum[FRAME_SIZE / 2 + i];
     }
-
-    return spectrum;
   }
 
   /**
-   * Calculate the output of the mel filter
+   * Calculate the output of the mel filter, followed by a logarithm function (natural logarithm)
+   * floored at {@link #LOG_FLOOR}
    */
-  private float[] melFilter(float bin[]) {
-    float temp[] = new float[NUM_MEL_FILTERS + 2];
+  private void melFilter() {
+    final int[] cf = CENTER_FREQUENCIES;
 
     for (int k = 1; k <= NUM_MEL_FILTERS; k++) {
       float num1 = 0;
       float num2 = 0;
 
-      float den = (centerFrequencies[k] - centerFrequencies[k - 1] + 1);
-
-      for (int i = centerFrequencies[k - 1]; i <= centerFrequencies[k]; i++) {
-        num1 += bin[i] * (i - centerFrequencies[k - 1] + 1);
+      final float[] rising = RISING_WEIGHTS[k];
+      for (int i = 0; i < rising.length; i++) {
+        num1 += spectrum[cf[k - 1] + i] * rising[i];
       }
-      num1 /= den;
+      num1 /= RISING_NORMS[k];
 
-      den = (centerFrequencies[k + 1] - centerFrequencies[k] + 1);
-
-      for (int i = centerFrequencies[k] + 1; i <= centerFrequencies[k + 1]; i++) {
-        num2 += bin[i] * (1 - ((i - centerFrequencies[k]) / den));
+      final float[] falling = FALLING_WEIGHTS[k];
+      for (int i = 0; i < falling.length; i++) {
+        num2 += spectrum[cf[k] + 1 + i] * falling[i];
       }
 
-      temp[k] = num1 + num2;
+      final float log = (float) Math.log(num1 + num2);
+      logBank[k - 1] = log < LOG_FLOOR ? LOG_FLOOR : log;
     }
-
-    float bank[] = new float[NUM_MEL_FILTERS];
-
-    for (int i = 0; i < NUM_MEL_FILTERS; i++) {
-      bank[i] = temp[i + 1];
-    }
-
-    return bank;
-  }
-
-  /**
-   * the output of mel filtering is subjected to a logarithm function (natural logarithm)
-   * @param bank Output of mel filtering
-   * @return Natural log of the output of mel filtering
-   */
-  private float[] nonLinearTransformation(float bank[]) {
-    float f[] = new float[bank.length];
-    final float floor = -50f;
-
-    for (int i = 0; i < bank.length; i++) {
-      f[i] = (float) Math.log(bank[i]);
-
-      // check if ln() returns a value less than the floor
-      if (f[i] < floor) {
-        f[i] = floor;
-      }
-    }
-
-    return f;
   }
 
   /**
    * Cepstral coefficients are calculated from the output of the Non-linear Transformation method
-   * @param transformation Output of the Non-linear Transformation method
-   * @return Cepstral Coefficients
+   * @param coefficients receives the Cepstral Coefficients
    */
-  private float[] cepstralCoefficients(float[] transformation) {
-    float coefficients[] = new float[NUM_CEPSTRUM_COEF];
-
-    for (int i = 0; i < coefficients.length; i++) {
-      for (int j = 0; j < transformation.length; j++) {
-        coefficients[i] += transformation[j] * Math.cos(Math.PI * i / transformation.length * (j + 0.5));
+  private void cepstralCoefficients(float[] coefficients) {
+    for (int i = 0; i < NUM_CEPSTRUM_COEF; i++) {
+      final double[] dct = DCT[i];
+      float coefficient = 0;
+      for (int j = 0; j < NUM_MEL_FILTERS; j++) {
+        coefficient += logBank[j] * dct[j];
       }
+      coefficients[i] = coefficient;
     }
-
-    return coefficients;
   }
 
 }
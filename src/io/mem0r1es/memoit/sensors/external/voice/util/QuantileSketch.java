@@ -0,0 +1,141 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a quantile of a stream of values in constant memory,
+ * using the P-square algorithm (Jain &amp; Chlamtac, 1985).
+ * The estimate is exact as long as at most five values were added.
+ *
+ * @author Cyriaque Brousse
+ */
+final class QuantileSketch {
+
+  /** Number of markers */
+  private static final int MARKERS = 5;
+
+  /** Requested percentile, in (0,100] */
+  private final double percentile;
+
+  /** Heights of the markers */
+  private final double[] heights = new double[MARKERS];
+
+  /** Actual positions of the markers (zero-indexed) */
+  private final int[] positions = new int[MARKERS];
+
+  /** Desired positions of the markers */
+  private final double[] desired = new double[MARKERS];
+
+  /** Increments of the desired positions */
+  private final double[] increments = new double[MARKERS];
+
+  /** Number of values added */
+  private long count = 0;
+
+  /**
+   * @param percentile the percentile to estimate, in (0,100] (same convention as {@link Percentile})
+   */
+  QuantileSketch(double percentile) {
+    Preconditions.checkArgument(percentile > 0 && percentile <= 100, "percentile must be in (0,100]");
+
+    this.percentile = percentile;
+
+    final double p = percentile / 100;
+    increments[0] = 0;
+    increments[1] = p / 2;
+    increments[2] = p;
+    increments[3] = (1 + p) / 2;
+    increments[4] = 1;
+  }
+
+  double getPercentile() {
+    return percentile;
+  }
+
+  void add(double value) {
+    if (count < MARKERS) {
+      heights[(int) count++] = value;
+
+      if (count == MARKERS) {
+        Arrays.sort(heights);
+        final double p = percentile / 100;
+        for (int i = 0; i < MARKERS; i++) {
+          positions[i] = i;
+        }
+        desired[0] = 0;
+        desired[1] = 2 * p;
+        desired[2] = 4 * p;
+        desired[3] = 2 + 2 * p;
+        desired[4] = 4;
+      }
+      return;
+    }
+
+    // find the cell k such that heights[k] <= value < heights[k+1], adjusting the extremes
+    final int k;
+    if (value < heights[0]) {
+      heights[0] = value;
+      k = 0;
+    } else if (value >= heights[MARKERS - 1]) {
+      heights[MARKERS - 1] = value;
+      k = MARKERS - 2;
+    } else {
+      int cell = 0;
+      while (value >= heights[cell + 1]) {
+        cell++;
+      }
+      k = cell;
+    }
+
+    for (int i = k + 1; i < MARKERS; i++) {
+      positions[i]++;
+    }
+    for (int i = 0; i < MARKERS; i++) {
+      desired[i] += increments[i];
+    }
+    count++;
+
+    // adjust the heights of the middle markers if they are off their desired positions
+    for (int i = 1; i < MARKERS - 1; i++) {
+      final double d = desired[i] - positions[i];
+      if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+        final int sign = d >= 0 ? 1 : -1;
+        final double candidate = parabolic(i, sign);
+        if (heights[i - 1] < candidate && candidate < heights[i + 1]) {
+          heights[i] = candidate;
+        } else {
+          heights[i] = linear(i, sign);
+        }
+        positions[i] += sign;
+      }
+    }
+  }
+
+  /**
+   * @return the estimated percentile, or {@code NaN} if no value was added
+   */
+  double get() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (count <= MARKERS) {
+      return new Percentile(percentile).evaluate(Arrays.copyOf(heights, (int) count));
+    }
+    return heights[2];
+  }
+
+  private double parabolic(int i, int sign) {
+    final double n0 = positions[i - 1], n1 = positions[i], n2 = positions[i + 1];
+    return heights[i] + sign / (n2 - n0) * (
+       (n1 - n0 + sign) * (heights[i + 1] - heights[i]) / (n2 - n1) +
+       (n2 - n1 - sign) * (heights[i] - heights[i - 1]) / (n1 - n0));
+  }
+
+  private double linear(int i, int sign) {
+    return heights[i] + sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+  }
+}
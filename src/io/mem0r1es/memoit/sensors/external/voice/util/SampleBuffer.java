@@ -0,0 +1,141 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.util.Arrays;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_OVERLAP;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Decoded audio samples of a voice file, held in memory.
+ * The file is decoded once, and each processing stage then replays the samples frame by frame.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class SampleBuffer {
+
+  /** Format of the replayed audio events */
+  private static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(SAMPLING_RATE, 16, 1, true, false);
+
+  private final float[] samples;
+  private final int length;
+
+  private SampleBuffer(float[] samples, int length) {
+    this.samples = samples;
+    this.length = length;
+  }
+
+  /**
+   * Decodes the whole audio file into memory
+   *
+   * @param file audio file to decode
+   * @return the decoded samples
+   */
+  public static SampleBuffer decode(File file) throws Exception {
+    final Collector collector = new Collector();
+    // decode without overlap, so that frames can simply be concatenated
+    final AudioDispatcher dispatcher = AudioDispatcherFactory.fromFile(file, FRAME_SIZE, 0);
+    dispatcher.addAudioProcessor(collector);
+    dispatcher.run();
+    return new SampleBuffer(collector.samples, collector.length);
+  }
+
+  /**
+   * @return the number of samples held
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Shorthand for {@code dispatch(FRAME_SIZE, FRAME_OVERLAP, processors)}.
+   *
+   * @see #dispatch(int, int, AudioProcessor...)
+   */
+  public void dispatch(AudioProcessor... processors) {
+    dispatch(FRAME_SIZE, FRAME_OVERLAP, processors);
+  }
+
+  /**
+   * Replays the samples to the given processors, with the same semantics as an {@link AudioDispatcher}:
+   * a processor returning {@code false} breaks the chain for the current frame only,
+   * and the last frame is zero-padded. Each frame is refilled from the samples, so processors may modify it in place.
+   *
+   * @param frameSize size of each frame (samples)
+   * @param overlap number of samples shared by two consecutive frames
+   * @param processors the processing chain
+   */
+  public void dispatch(int frameSize, int overlap, AudioProcessor... processors) {
+    Preconditions.checkArgument(overlap >= 0 && overlap < frameSize, "overlap must be in [0,frameSize)");
+
+    final int step = frameSize - overlap;
+    final float[] frame = new float[frameSize];
+    final AudioEvent event = new AudioEvent(FORMAT);
+
+    for (int offset = 0; offset < length; offset += step) {
+      final int available = Math.min(frameSize, length - offset);
+      System.arraycopy(samples, offset, frame, 0, available);
+      Arrays.fill(frame, available, frameSize, 0f);
+
+      event.setFloatBuffer(frame);
+      event.setOverlap(offset == 0 ? 0 : overlap);
+
+      for (AudioProcessor processor : processors) {
+        if (!processor.process(event)) {
+          break;
+        }
+      }
+
+      if (offset + frameSize >= length) {
+        break;
+      }
+    }
+
+    for (AudioProcessor processor : processors) {
+      processor.processingFinished();
+    }
+  }
+
+  /**
+   * Accumulates the decoded (non-overlapping) frames into a growing array.
+   * The last frame is zero-padded by the dispatcher: the padding is trimmed once the whole file is read,
+   * from the number of samples the dispatcher actually read.
+   */
+  private static final class Collector implements AudioProcessor {
+    private float[] samples = new float[FRAME_SIZE * 64];
+    private int length = 0;
+
+    /** Last event seen, whose count of processed bytes is updated by the dispatcher after each frame */
+    private AudioEvent event = null;
+
+    @Override
+    public boolean process(AudioEvent event) {
+      this.event = event;
+      final float[] frame = event.getFloatBuffer();
+
+      if (length + frame.length > samples.length) {
+        samples = Arrays.copyOf(samples, Math.max(samples.length * 2, length + frame.length));
+      }
+      System.arraycopy(frame, 0, samples, length, frame.length);
+      length += frame.length;
+
+      return true;
+    }
+
+    @Override
+    public void processingFinished() {
+      if (event != null) {
+        length = (int) Math.min(length, event.getSamplesProcessed());
+      }
+    }
+  }
+}
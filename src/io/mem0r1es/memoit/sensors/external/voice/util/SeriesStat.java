@@ -0,0 +1,151 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.commons.math3.stat.StatUtils;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+
+import java.util.Arrays;
+
+/**
+ * Statistics on a series of values, accumulated value by value without boxing.
+ * <p>
+ * In {@link Mode#EXACT} mode the values are kept in a primitive array, and the statistics are
+ * the same as the ones of a {@code DescriptiveStatistics} holding them.<br>
+ * In {@link Mode#STREAMING} mode the memory used is constant: mean and standard deviation are
+ * computed incrementally (Welford), and percentiles are estimated by {@link QuantileSketch}es.
+ * Only the percentiles declared at construction can then be queried.
+ *
+ * @author Cyriaque Brousse
+ */
+public final class SeriesStat {
+
+  /**
+   * Accumulation modes
+   */
+  public enum Mode {
+    /** Keeps every value, for exact statistics (training parity) */
+    EXACT,
+    /** Constant memory, percentiles are estimated */
+    STREAMING
+  }
+
+  private final Mode mode;
+
+  /** Number of values added */
+  private long n = 0;
+
+  /* EXACT mode */
+  private float[] values;
+  private double[] cachedValues;
+
+  /* STREAMING mode */
+  private double mean = 0.0;
+  private double m2 = 0.0;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+  private final QuantileSketch[] sketches;
+
+  /**
+   * @param mode accumulation mode
+   * @param percentiles the percentiles that will be queried, in (0,100]. Only needed in streaming mode.
+   */
+  public SeriesStat(Mode mode, double... percentiles) {
+    this.mode = mode;
+
+    if (mode == Mode.EXACT) {
+      this.values = new float[16];
+      this.sketches = new QuantileSketch[0];
+    } else {
+      this.sketches = new QuantileSketch[percentiles.length];
+      for (int i = 0; i < percentiles.length; i++) {
+        sketches[i] = new QuantileSketch(percentiles[i]);
+      }
+    }
+  }
+
+  public void add(float value) {
+    if (mode == Mode.EXACT) {
+      if (n == values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      values[(int) n++] = value;
+      cachedValues = null;
+      return;
+    }
+
+    n++;
+    final double delta = value - mean;
+    mean += delta / n;
+    m2 += delta * (value - mean);
+    min = n == 1 ? value : Math.min(min, value);
+    max = n == 1 ? value : Math.max(max, value);
+    for (QuantileSketch sketch : sketches) {
+      sketch.add(value);
+    }
+  }
+
+  public long getN() {
+    return n;
+  }
+
+  public double getMean() {
+    if (mode == Mode.EXACT) {
+      return StatUtils.mean(doubleValues());
+    }
+    return n == 0 ? Double.NaN : mean;
+  }
+
+  public double getStandardDeviation() {
+    if (n == 0) {
+      return Double.NaN;
+    }
+    if (n == 1) {
+      return 0.0;
+    }
+    if (mode == Mode.EXACT) {
+      return Math.sqrt(StatUtils.variance(doubleValues()));
+    }
+    return Math.sqrt(m2 / (n - 1));
+  }
+
+  public double getMax() {
+    return mode == Mode.EXACT ? StatUtils.max(doubleValues()) : max;
+  }
+
+  public double getMin() {
+    return mode == Mode.EXACT ? StatUtils.min(doubleValues()) : min;
+  }
+
+  /**
+   * @param percentile the percentile, in (0,100]
+   * @return the (estimated, in streaming mode) percentile, or {@code NaN} if the series is empty
+   */
+  public double getPercentile(double percentile) {
+    if (mode == Mode.EXACT) {
+      return new Percentile(percentile).evaluate(doubleValues());
+    }
+
+    for (QuantileSketch sketch : sketches) {
+      if (sketch.getPercentile() == percentile) {
+        return sketch.get();
+      }
+    }
+    throw new IllegalArgumentException("percentile " + percentile + " was not declared");
+  }
+
+  /**
+   * @return the values added so far. Only available in exact mode.
+   */
+  public double[] doubleValues() {
+    Preconditions.checkState(mode == Mode.EXACT, "values are only kept in exact mode");
+
+    if (cachedValues == null) {
+      cachedValues = new double[(int) n];
+      for (int i = 0; i < n; i++) {
+        cachedValues[i] = values[i];
+      }
+    }
+    return cachedValues;
+  }
+}
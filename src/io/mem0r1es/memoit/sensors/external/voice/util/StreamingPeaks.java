@@ -0,0 +1,100 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Detects the peaks of a series as its values arrive, in constant memory.
+ * A value is a peak if it is the (first) maximum of the values within {@link #WIDTH} positions of it,
+ * if it is above the mean minus the standard deviation of the series, and if it is further than a threshold
+ * from that mean. The mean and standard deviation are the running ones, so this only approximates
+ * a peak detection done on the whole series: peaks close to the mean are missed while it settles, and the count
+ * stays within 30% of the exact one on pitch contours ({@code StreamingPeaksTest}).
+ *
+ * @author Cyriaque Brousse
+ */
+final class StreamingPeaks {
+
+  /** Number of neighbours on each side a peak must dominate */
+  private static final int WIDTH = 2;
+
+  /** Values of the peaks */
+  final SeriesStat values = new SeriesStat(SeriesStat.Mode.STREAMING);
+
+  /** Time distances between consecutive peaks (s) */
+  final SeriesStat distances = new SeriesStat(SeriesStat.Mode.STREAMING);
+
+  /** Series the peaks are detected on, giving the running mean and standard deviation */
+  private final SeriesStat series;
+
+  /** Minimal distance of a peak to the mean */
+  private final float threshold;
+
+  /** Last values of the series, indexed by their position modulo the window length */
+  private final float[] window = new float[2 * WIDTH + 1];
+
+  /** Number of values added */
+  private long count = 0;
+
+  /** Position of the next value to evaluate */
+  private long nextCandidate = 0;
+
+  /** Position of the last peak, -1 if none */
+  private long lastPeak = -1;
+
+  /**
+   * @param series the series the values are added to, before being added to this detector
+   * @param threshold minimal distance of a peak to the mean
+   */
+  StreamingPeaks(SeriesStat series, float threshold) {
+    this.series = series;
+    this.threshold = threshold;
+  }
+
+  void add(float value) {
+    window[(int) (count % window.length)] = value;
+    count++;
+
+    // evaluate the values whose right neighbours are all known
+    while (nextCandidate + WIDTH < count) {
+      evaluate(nextCandidate++);
+    }
+  }
+
+  /**
+   * Evaluates the last values, whose right neighbourhood is truncated
+   */
+  void flush() {
+    while (nextCandidate < count) {
+      evaluate(nextCandidate++);
+    }
+  }
+
+  private void evaluate(long candidate) {
+    final float value = at(candidate);
+    final long from = Math.max(0, candidate - WIDTH);
+    final long to = Math.min(count - 1, candidate + WIDTH);
+
+    for (long i = from; i <= to; i++) {
+      if ((i < candidate && at(i) >= value) || (i > candidate && at(i) > value)) {
+        return;
+      }
+    }
+
+    final double mean = series.getMean();
+    final double stdDev = series.getStandardDeviation();
+    if (value < mean - stdDev || Math.abs(value - mean) <= threshold) {
+      return;
+    }
+
+    values.add(value);
+    if (lastPeak >= 0) {
+      distances.add((float) (candidate - lastPeak) * FRAME_SIZE / SAMPLING_RATE);
+    }
+    lastPeak = candidate;
+  }
+
+  private float at(long position) {
+    return window[(int) (position % window.length)];
+  }
+}
@@ -33,6 +33,13 @@ public class Tones extends ArrayList<Float> {
 
   }
 
+  /**
+   * @return the frequency every voice is normalised to (Hz)
+   */
+  public float getReference() {
+    return REFERENCE;
+  }
+
   public int semitonesDifferenceCount(float f) {
     final float closest = findClosest(f);
     final int index = indexOf(closest);
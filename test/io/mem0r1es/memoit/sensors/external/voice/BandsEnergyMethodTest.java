@@ -0,0 +1,217 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.BandsEnergyMethod;
+import io.mem0r1es.memoit.sensors.external.voice.util.BandFilterBank;
+import io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline;
+import io.mem0r1es.memoit.sensors.external.voice.util.Pair;
+import io.mem0r1es.memoit.sensors.external.voice.util.SampleBuffer;
+
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.WINDOW;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the {@link BandsEnergyMethod}s with the original one, {@link BandsEnergyMethod#FILTERS}:
+ * {@link BandsEnergyMethod#FILTER_BANK} must give bit-for-bit the same energies,
+ * {@link BandsEnergyMethod#SPECTRUM} must stay within the documented bounds.
+ * <p>
+ * Besides synthetic frames, runs on the frames of the WAV files of the directory given with
+ * {@code -Dvoice.test.recordings=DIRECTORY}, if any.
+ *
+ * @author Cyriaque Brousse
+ */
+public class BandsEnergyMethodTest {
+
+  /** Number of random frames */
+  private static final int FRAMES = 2_000;
+
+  /** Seed of the frame generator, so that all runs see the same frames */
+  private static final long SEED = 5L;
+
+  /** Amplitudes of the random frames */
+  private static final double[] AMPLITUDES = {1e-4, 0.01, 0.3, 1.0};
+
+  /** Duration of the synthetic signals (s) */
+  private static final int SECONDS = 2;
+
+  /** Largest difference (dB) on the band of a tone at its center, except the first band, which starts at 0 Hz */
+  private static final double SPECTRUM_TONE_DB = 2.0;
+  private static final double SPECTRUM_FIRST_BAND_TONE_DB = 7.0;
+
+  /** Bounds of the ratio of the total energy of the bands to the one of the filters, on broadband frames */
+  private static final double SPECTRUM_MIN_TOTAL_RATIO = 0.1;
+  private static final double SPECTRUM_MAX_TOTAL_RATIO = 1.0;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final BandFilterBank bank = new BandFilterBank(FREQUENCY_BANDS, SAMPLING_RATE, WINDOW);
+  private final float[] energies = new float[FREQUENCY_BANDS.size()];
+
+  @Test
+  public void filterBankOnRandomFrames() {
+    final Random random = new Random(SEED);
+    final float[] frame = new float[FRAME_SIZE];
+    for (int f = 0; f < FRAMES; f++) {
+      final double amplitude = AMPLITUDES[f % AMPLITUDES.length];
+      for (int i = 0; i < FRAME_SIZE; i++) {
+        frame[i] = (float) (amplitude * random.nextGaussian());
+      }
+      assertFilterBankMatches("random frame " + f, frame);
+    }
+  }
+
+  @Test
+  public void filterBankOnSyntheticSignals() {
+    for (SyntheticSignals.Kind kind : SyntheticSignals.Kind.values()) {
+      final List<float[]> frames = frames(SyntheticSignals.generate(kind, SECONDS));
+      for (int f = 0; f < frames.size(); f++) {
+        assertFilterBankMatches(kind + " frame " + f, frames.get(f));
+      }
+    }
+  }
+
+  @Test
+  public void filterBankOnDecodedFrames() throws Exception {
+    for (File file : recordings()) {
+      final List<float[]> frames = decodedFrames(file);
+      for (int f = 0; f < frames.size(); f++) {
+        assertFilterBankMatches(file.getName() + " frame " + f, frames.get(f));
+      }
+    }
+  }
+
+  @Test
+  public void spectrumOnTones() {
+    final MfccPipeline pipeline = new MfccPipeline();
+    final float[] frame = new float[FRAME_SIZE];
+
+    for (int band = 0; band < FREQUENCY_BANDS.size(); band++) {
+      final float center = FREQUENCY_BANDS.get(band).first;
+      final double bound = band == 0 ? SPECTRUM_FIRST_BAND_TONE_DB : SPECTRUM_TONE_DB;
+
+      for (int phase = 0; phase < 8; phase++) {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+          frame[i] = (float) (0.5 * Math.sin(2 * Math.PI * center * i / SAMPLING_RATE + phase));
+        }
+        final List<Pair<Float, Float>> expected = FrameAnalyzer.computeBandsEnergy(frame, FREQUENCY_BANDS);
+        spectrumEnergies(pipeline, frame);
+
+        final double difference = Math.abs(10 * Math.log10(energies[band] / expected.get(band).second));
+        assertTrue("band " + band + " phase " + phase + " differs by " + difference + " dB", difference <= bound);
+      }
+    }
+  }
+
+  @Test
+  public void spectrumOnBroadbandFrames() throws Exception {
+    final MfccPipeline pipeline = new MfccPipeline();
+
+    final List<float[]> frames = new ArrayList<>();
+    frames.addAll(frames(SyntheticSignals.generate(SyntheticSignals.Kind.NOISE, SECONDS)));
+    frames.addAll(frames(SyntheticSignals.generate(SyntheticSignals.Kind.VOICE, SECONDS)));
+    for (File file : recordings()) {
+      frames.addAll(decodedFrames(file));
+    }
+
+    for (int f = 0; f < frames.size(); f++) {
+      final float[] frame = frames.get(f);
+      double expected = 0.0;
+      for (Pair<Float, Float> band : FrameAnalyzer.computeBandsEnergy(frame, FREQUENCY_BANDS)) {
+        expected += band.second;
+      }
+      if (expected == 0.0) {
+        continue;
+      }
+
+      spectrumEnergies(pipeline, frame);
+      double actual = 0.0;
+      for (float energy : energies) {
+        actual += energy;
+      }
+
+      final double ratio = actual / expected;
+      assertTrue("frame " + f + " total energy ratio " + ratio,
+         ratio >= SPECTRUM_MIN_TOTAL_RATIO && ratio <= SPECTRUM_MAX_TOTAL_RATIO);
+    }
+  }
+
+  private void assertFilterBankMatches(String label, float[] frame) {
+    final List<Pair<Float, Float>> expected = FrameAnalyzer.computeBandsEnergy(frame, FREQUENCY_BANDS);
+    bank.filterEnergies(frame, energies);
+
+    for (int band = 0; band < energies.length; band++) {
+      assertEquals(label + " band " + band,
+         Float.floatToIntBits(expected.get(band).second), Float.floatToIntBits(energies[band]));
+    }
+  }
+
+  private void spectrumEnergies(MfccPipeline pipeline, float[] frame) {
+    pipeline.process(frame);
+    bank.spectrumEnergies(pipeline.getMagnitudeSpectrum(), energies);
+  }
+
+  /**
+   * @return the frames of the samples, without overlap, the last partial one dropped
+   */
+  private static List<float[]> frames(float[] samples) {
+    final List<float[]> frames = new ArrayList<>();
+    for (int offset = 0; offset + FRAME_SIZE <= samples.length; offset += FRAME_SIZE) {
+      frames.add(Arrays.copyOfRange(samples, offset, offset + FRAME_SIZE));
+    }
+    return frames;
+  }
+
+  /**
+   * @return the frames of the file, as replayed to the extraction
+   */
+  private static List<float[]> decodedFrames(File file) throws Exception {
+    final List<float[]> frames = new ArrayList<>();
+    SampleBuffer.decode(file).dispatch(new AudioProcessor() {
+      @Override
+      public boolean process(AudioEvent event) {
+        frames.add(event.getFloatBuffer().clone());
+        return true;
+      }
+
+      @Override
+      public void processingFinished() { }
+    });
+    return frames;
+  }
+
+  /**
+   * @return the synthetic voice written to a WAV file, and the recordings given with {@code voice.test.recordings}
+   */
+  private List<File> recordings() throws Exception {
+    final List<File> files = new ArrayList<>();
+
+    final File voice = folder.newFile("voice.wav");
+    SyntheticSignals.writeWav(SyntheticSignals.generate(SyntheticSignals.Kind.VOICE, SECONDS), voice);
+    files.add(voice);
+
+    final String directory = System.getProperty("voice.test.recordings");
+    if (directory != null) {
+      final File[] recordings = new File(directory).listFiles((dir, name) -> name.toLowerCase().endsWith(".wav"));
+      if (recordings != null) {
+        files.addAll(Arrays.asList(recordings));
+      }
+    }
+    return files;
+  }
+}
@@ -0,0 +1,151 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import be.tarsos.dsp.AudioDispatcher;
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.WaveformSimilarityBasedOverlapAdd;
+import be.tarsos.dsp.WaveformSimilarityBasedOverlapAdd.Parameters;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+import be.tarsos.dsp.io.jvm.AudioDispatcherFactory;
+import be.tarsos.dsp.io.jvm.WaveformWriter;
+import be.tarsos.dsp.resample.RateTransposer;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_OVERLAP;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the frames of the {@link PitchShifter} with the ones of the former extraction, which wrote the shifted
+ * audio to a temporary 16 bits WAV file and read it back, and checks that they differ by at most
+ * {@link PitchShifter#TOLERANCE} per sample.
+ *
+ * @author Cyriaque Brousse
+ */
+public class PitchShifterTest {
+
+  /** Compared pitch shifts (cents), as applied by the extraction: whole semitones */
+  private static final int[] SHIFTS = {-700, -200, 0, 300, 1200};
+
+  /** Duration of the synthetic signals (s) */
+  private static final int SECONDS = 5;
+
+  /** Gain of the loud signal, clipped to full scale, whose edges make the resampling overshoot it */
+  private static final float LOUD_GAIN = 4f;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void syntheticSignals() throws Exception {
+    for (SyntheticSignals.Kind kind : SyntheticSignals.Kind.values()) {
+      final File source = folder.newFile("synthetic_" + kind.name().toLowerCase() + ".wav");
+      SyntheticSignals.writeWav(SyntheticSignals.generate(kind, SECONDS), source);
+
+      for (int cents : SHIFTS) {
+        compare(source, cents);
+      }
+    }
+  }
+
+  @Test
+  public void loudSignal() throws Exception {
+    final float[] samples = SyntheticSignals.generate(SyntheticSignals.Kind.TONE, SECONDS);
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = Math.max(-1f, Math.min(1f, LOUD_GAIN * samples[i]));
+    }
+    final File source = folder.newFile("loud.wav");
+    SyntheticSignals.writeWav(samples, source);
+
+    for (int cents : SHIFTS) {
+      compare(source, cents);
+    }
+  }
+
+  @Test
+  public void wrapLikeTheWavFile() {
+    assertEquals(1f, PitchShifter.wrap(1f), 0f);
+    assertEquals(-1f, PitchShifter.wrap(-1f), 0f);
+    // 1.1 * 32767 = 36043.7, truncated to 36043, which is -29493 on 16 bits
+    assertEquals(-29493f / 32767f, PitchShifter.wrap(1.1f), 0f);
+    assertEquals(29493f / 32767f, PitchShifter.wrap(-1.1f), 0f);
+  }
+
+  private void compare(File source, int cents) throws Exception {
+    final List<float[]> expected = throughFile(source, cents);
+    final List<float[]> actual = inMemory(source, cents);
+    final String label = source.getName() + " " + cents + " cents";
+
+    assertEquals(label + " frames", expected.size(), actual.size());
+    for (int f = 0; f < expected.size(); f++) {
+      for (int i = 0; i < FRAME_SIZE; i++) {
+        final float difference = Math.abs(expected.get(f)[i] - actual.get(f)[i]);
+        assertTrue(label + " frame " + f + " sample " + i + " differs by " + difference,
+           difference <= PitchShifter.TOLERANCE);
+      }
+    }
+  }
+
+  /**
+   * Former path: shifts the file into a temporary WAV file, then reads it back in frames
+   */
+  private List<float[]> throughFile(File source, int cents) throws Exception {
+    final File target = folder.newFile();
+    final double factor = PitchShifter.centsToFactor(cents);
+    final WaveformSimilarityBasedOverlapAdd wsola =
+       new WaveformSimilarityBasedOverlapAdd(Parameters.musicDefaults(factor, SAMPLING_RATE));
+    final AudioDispatcher shifting =
+       AudioDispatcherFactory.fromFile(source, wsola.getInputBufferSize(), wsola.getOverlap());
+    wsola.setDispatcher(shifting);
+    shifting.addAudioProcessor(wsola);
+    shifting.addAudioProcessor(new RateTransposer(factor));
+    shifting.addAudioProcessor(new WaveformWriter(
+       new TarsosDSPAudioFormat(SAMPLING_RATE, 16, 1, true, false), target.getAbsolutePath()));
+    shifting.run();
+
+    return read(target);
+  }
+
+  /**
+   * Current path: the shifted frames are handed over in memory
+   */
+  private static List<float[]> inMemory(File source, int cents) throws Exception {
+    final List<float[]> frames = new ArrayList<>();
+    final PitchShifter shifter = new PitchShifter(cents, collector(frames));
+    final AudioDispatcher dispatcher =
+       AudioDispatcherFactory.fromFile(source, shifter.getInputBufferSize(), shifter.getOverlap());
+    dispatcher.addAudioProcessor(shifter);
+    dispatcher.run();
+    return frames;
+  }
+
+  private static List<float[]> read(File file) throws Exception {
+    final List<float[]> frames = new ArrayList<>();
+    final AudioDispatcher reading = AudioDispatcherFactory.fromFile(file, FRAME_SIZE, FRAME_OVERLAP);
+    reading.addAudioProcessor(collector(frames));
+    reading.run();
+    return frames;
+  }
+
+  private static AudioProcessor collector(List<float[]> frames) {
+    return new AudioProcessor() {
+      @Override
+      public boolean process(AudioEvent event) {
+        frames.add(event.getFloatBuffer().clone());
+        return true;
+      }
+
+      @Override
+      public void processingFinished() { }
+    };
+  }
+}
@@ -0,0 +1,48 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import org.junit.Test;
+
+import be.tarsos.dsp.AudioEvent;
+import be.tarsos.dsp.AudioProcessor;
+import be.tarsos.dsp.io.TarsosDSPAudioFormat;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Cyriaque Brousse
+ */
+public class PitchTrackerTest {
+
+  private static final TarsosDSPAudioFormat FORMAT = new TarsosDSPAudioFormat(SAMPLING_RATE, 16, 1, true, false);
+
+  @Test
+  public void firstEventReadWhole() {
+    final PitchShifter shifter = new PitchShifter(0, new AudioProcessor() {
+      @Override
+      public boolean process(AudioEvent event) {
+        return true;
+      }
+
+      @Override
+      public void processingFinished() { }
+    });
+    final PitchTracker tracker = new PitchTracker(shifter, 1);
+
+    final int size = shifter.getInputBufferSize();
+    final int overlap = shifter.getOverlap();
+    final float[] samples = SyntheticSignals.generate(SyntheticSignals.Kind.VOICE, 1);
+
+    // as a dispatcher does, every event carries the overlap, including the first one
+    final AudioEvent event = new AudioEvent(FORMAT);
+    event.setOverlap(overlap);
+    for (int e = 0; e < 3; e++) {
+      final float[] buffer = new float[size];
+      System.arraycopy(samples, e * (size - overlap), buffer, 0, size);
+      event.setFloatBuffer(buffer);
+      tracker.process(event);
+    }
+
+    assertEquals(size + 2L * (size - overlap), tracker.getSamples());
+  }
+}
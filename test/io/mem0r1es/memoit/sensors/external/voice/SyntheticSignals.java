@@ -0,0 +1,97 @@
+package io.mem0r1es.memoit.sensors.external.voice;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+
+/**
+ * Synthetic audio signals sampled at {@link CallRecorder#SAMPLING_RATE}, used as test and benchmark inputs
+ *
+ * @author Cyriaque Brousse
+ */
+public final class SyntheticSignals {
+
+  /** Seed of the noise generator, so that all runs see the same signals */
+  private static final long SEED = 42L;
+
+  /**
+   * Kinds of signals
+   */
+  public enum Kind {
+    /** Pure 220 Hz tone */
+    TONE,
+    /** White noise */
+    NOISE,
+    /** Harmonic signal with a gliding pitch and syllable-like amplitude modulation, surrounded by silence */
+    VOICE
+  }
+
+  private SyntheticSignals() { }
+
+  /**
+   * @param kind kind of signal
+   * @param seconds duration (s)
+   * @return the samples, in [-1,1]
+   */
+  public static float[] generate(Kind kind, double seconds) {
+    final float[] samples = new float[(int) (seconds * SAMPLING_RATE)];
+    final Random random = new Random(SEED);
+
+    switch (kind) {
+      case TONE:
+        for (int i = 0; i < samples.length; i++) {
+          samples[i] = (float) (0.5 * Math.sin(2 * Math.PI * 220 * i / SAMPLING_RATE));
+        }
+        break;
+      case NOISE:
+        for (int i = 0; i < samples.length; i++) {
+          samples[i] = (float) (0.25 * random.nextGaussian());
+        }
+        break;
+      case VOICE:
+        // half a second of silence on each side
+        final int margin = SAMPLING_RATE / 2;
+        double phase = 0;
+        for (int i = margin; i < samples.length - margin; i++) {
+          final double t = (double) i / SAMPLING_RATE;
+          final double pitch = 150 + 30 * Math.sin(2 * Math.PI * 0.5 * t);
+          phase += 2 * Math.PI * pitch / SAMPLING_RATE;
+
+          double value = 0;
+          for (int harmonic = 1; harmonic <= 8; harmonic++) {
+            value += Math.sin(harmonic * phase) / harmonic;
+          }
+          final double envelope = 0.5 * (1 - Math.cos(2 * Math.PI * 4 * t));
+          samples[i] = (float) (0.3 * envelope * value + 0.01 * random.nextGaussian());
+        }
+        break;
+    }
+
+    return samples;
+  }
+
+  /**
+   * Writes the samples to a 16 bits mono WAV file
+   */
+  public static void writeWav(float[] samples, File target) throws IOException {
+    final byte[] bytes = new byte[samples.length * 2];
+    for (int i = 0; i < samples.length; i++) {
+      final int value = (int) (Math.max(-1f, Math.min(1f, samples[i])) * Short.MAX_VALUE);
+      bytes[2 * i] = (byte) value;
+      bytes[2 * i + 1] = (byte) (value >> 8);
+    }
+
+    final AudioFormat format = new AudioFormat(SAMPLING_RATE, 16, 1, true, false);
+    try (AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(bytes), format, samples.length)) {
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, target);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.EMOTION_MAPPER;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writes features with {@link ColumnarFeatureSink} and reads them back with {@link ColumnarFeatureReader}.
+ *
+ * @author Cyriaque Brousse
+ */
+public class ColumnarFeatureSinkTest {
+
+  /** Files written, with their number of blocks. The third one has no emotion mapping. */
+  private static final String[] FILES = {
+     "0100104P5Thumiliating.wav", "0106201P5Tgleeful.wav", "missing.wav", "0700608P4Tfriendly.wav"
+  };
+  private static final int[] BLOCKS = {
+     ColumnarFeatureSink.ROW_GROUP_SIZE - 3, 10, 7, ColumnarFeatureSink.ROW_GROUP_SIZE
+  };
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTrip() throws Exception {
+    final Random random = new Random(17L);
+    final File file = folder.newFile("features.vfc");
+
+    // expected rows: values and labels
+    final List<float[]> values = new ArrayList<>();
+    final List<String[]> labels = new ArrayList<>();
+
+    try (ColumnarFeatureSink sink = ColumnarFeatureSink.create(file.toPath())) {
+      for (int f = 0; f < FILES.length; f++) {
+        final String sample = EmotionMapper.sampleName(FILES[f]);
+        final Pair<String, String> emotion = EMOTION_MAPPER.get(sample);
+
+        final List<BlockStat> blocks = new ArrayList<>();
+        for (int b = 0; b < BLOCKS[f]; b++) {
+          final BlockStat block = randomBlock(random, b);
+          blocks.add(block);
+
+          if (emotion != null) {
+            final float[] row = new float[FeatureSchema.COLUMNS.size()];
+            for (int column = 0; column < row.length; column++) {
+              row[column] = block.values[column].floatValue();
+            }
+            values.add(row);
+            labels.add(new String[]{sample, emotion.first, emotion.second});
+          }
+        }
+        sink.write(FILES[f], blocks);
+      }
+    }
+
+    try (ColumnarFeatureReader reader = ColumnarFeatureReader.open(file.toPath())) {
+      assertEquals(FeatureSchema.COLUMNS, reader.getColumns());
+      assertEquals(FeatureSchema.LABELS, reader.getLabels());
+      assertEquals(values.size(), reader.getRowCount());
+      assertEquals((values.size() + ColumnarFeatureSink.ROW_GROUP_SIZE - 1) / ColumnarFeatureSink.ROW_GROUP_SIZE,
+         reader.getRowGroupCount());
+
+      // cell by cell, from the last row group first so that groups are not mapped in order
+      for (int row = values.size() - 1; row >= 0; row--) {
+        for (int column = 0; column < FeatureSchema.COLUMNS.size(); column++) {
+          assertBitsEqual("row " + row + " column " + column, values.get(row)[column], reader.getFloat(row, column));
+        }
+        for (int label = 0; label < FeatureSchema.LABELS.size(); label++) {
+          assertEquals("row " + row + " label " + label, labels.get(row)[label], reader.getLabel(row, label));
+        }
+      }
+
+      // whole columns, and row groups
+      final float[] column = new float[values.size()];
+      for (int c = 0; c < FeatureSchema.COLUMNS.size(); c++) {
+        reader.readColumn(c, column);
+        for (int row = 0; row < values.size(); row++) {
+          assertBitsEqual("row " + row + " column " + c, values.get(row)[c], column[row]);
+        }
+
+        int row = 0;
+        for (int group = 0; group < reader.getRowGroupCount(); group++) {
+          final FloatBuffer cells = reader.column(group, c);
+          assertEquals(Math.min(ColumnarFeatureSink.ROW_GROUP_SIZE, values.size() - row), cells.remaining());
+          while (cells.hasRemaining()) {
+            assertBitsEqual("row " + row + " column " + c, values.get(row++)[c], cells.get());
+          }
+        }
+        assertEquals(values.size(), row);
+      }
+    }
+
+    // footer: dictionaries of the labels, in order of first appearance, then the footer offset and the magic
+    final ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(ColumnarFeatureSink.MAGIC, bytes.getInt(bytes.limit() - Integer.BYTES));
+    bytes.position((int) bytes.getLong(bytes.limit() - Integer.BYTES - Long.BYTES));
+    for (int label = 0; label < FeatureSchema.LABELS.size(); label++) {
+      final List<String> expected = new ArrayList<>();
+      for (String[] row : labels) {
+        if (!expected.contains(row[label])) {
+          expected.add(row[label]);
+        }
+      }
+      assertEquals(expected, readStrings(bytes, bytes.getInt()));
+    }
+    assertEquals(bytes.limit() - Integer.BYTES - Long.BYTES, bytes.position());
+  }
+
+  @Test
+  public void empty() throws Exception {
+    final File file = folder.newFile("empty.vfc");
+    ColumnarFeatureSink.create(file.toPath()).close();
+
+    try (ColumnarFeatureReader reader = ColumnarFeatureReader.open(file.toPath())) {
+      assertEquals(FeatureSchema.COLUMNS, reader.getColumns());
+      assertEquals(0, reader.getRowCount());
+      assertEquals(0, reader.getRowGroupCount());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void notAColumnarFile() throws Exception {
+    final File file = folder.newFile("features.csv");
+    final byte[] bytes = new byte[256];
+    Arrays.fill(bytes, (byte) ',');
+    Files.write(file.toPath(), bytes);
+
+    ColumnarFeatureReader.open(file.toPath());
+  }
+
+  /**
+   * @return a block of random values, of the types of the extracted statistics
+   */
+  private static BlockStat randomBlock(Random random, long startId) {
+    final Number[] values = new Number[FeatureSchema.COLUMNS.size()];
+    for (int column = 0; column < values.length; column++) {
+      switch (random.nextInt(8)) {
+        case 0:
+          values[column] = Float.NaN;
+          break;
+        case 1:
+          values[column] = (long) random.nextInt(100);
+          break;
+        case 2:
+          values[column] = random.nextDouble() * 300;
+          break;
+        default:
+          values[column] = (float) random.nextGaussian();
+      }
+    }
+    return new BlockStat(startId, values);
+  }
+
+  private static void assertBitsEqual(String message, float expected, float actual) {
+    assertEquals(message, Float.floatToIntBits(expected), Float.floatToIntBits(actual));
+  }
+
+  private static List<String> readStrings(ByteBuffer buffer, int count) {
+    final List<String> strings = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      strings.add(new String(bytes, StandardCharsets.UTF_8));
+    }
+    return strings;
+  }
+}
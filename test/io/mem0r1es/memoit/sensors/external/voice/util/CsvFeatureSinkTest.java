@@ -0,0 +1,164 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static io.mem0r1es.memoit.sensors.external.voice.BlockProcessor.FREQUENCY_BANDS;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.EMOTION_MAPPER;
+import static io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline.NUM_CEPSTRUM_COEF;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link CsvFeatureSink} prints the same bytes as the original extraction, which printed the statistics
+ * map of each block, the bands being iterated through a hash map keyed by their center.
+ *
+ * @author Cyriaque Brousse
+ */
+public class CsvFeatureSinkTest {
+
+  /** Files of the emotion mapping, and one missing from it */
+  private static final String[] FILES = {
+     "0100104P5Thumiliating.wav", "0100104P6Thumiliating.wav", "missing.wav", "0100104R5Thumiliating.wav"
+  };
+
+  private static final int BLOCKS_PER_FILE = 3;
+
+  @Test
+  public void bandOrderIsTheHashMapOne() {
+    final Map<Float, Integer> bandsByCenter = new HashMap<>();
+    for (int i = 0; i < FREQUENCY_BANDS.size(); ++i) {
+      bandsByCenter.put(FREQUENCY_BANDS.get(i).first, i);
+    }
+
+    final List<Integer> expected = new ArrayList<>(bandsByCenter.values());
+    final List<Integer> actual = new ArrayList<>();
+    for (int band : FeatureSchema.BAND_ORDER) {
+      actual.add(band);
+    }
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void sameBytesAsOriginal() {
+    final Random random = new Random(11L);
+
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    final PrintStream original = new PrintStream(expected);
+    final CsvFeatureSink sink = new CsvFeatureSink(new PrintStream(actual), false, false);
+
+    for (String file : FILES) {
+      final List<BlockStat> blocks = new ArrayList<>();
+      for (int b = 0; b < BLOCKS_PER_FILE; b++) {
+        final ImmutableMap<String, Number> stats = originalStats(random);
+        blocks.add(new BlockStat(b, values(stats)));
+        printWithEmotion(original, stats, file);
+      }
+      original.println();
+
+      sink.write(file, blocks);
+    }
+    sink.close();
+    original.flush();
+
+    assertEquals(new String(expected.toByteArray()), new String(actual.toByteArray()));
+    assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+  }
+
+  @Test
+  public void header() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new CsvFeatureSink(new PrintStream(out), true, false).close();
+
+    final String[] header = new String(out.toByteArray()).trim().split(",");
+    assertEquals(FeatureSchema.COLUMNS.size() + FeatureSchema.LABELS.size(), header.length);
+    assertEquals(FeatureSchema.COLUMNS, Arrays.asList(header).subList(0, FeatureSchema.COLUMNS.size()));
+  }
+
+  /* **********************************
+            Original extraction
+     ********************************** */
+
+  /**
+   * @return random statistics, with the types and in the order of the original statistics map
+   */
+  private static ImmutableMap<String, Number> originalStats(Random random) {
+    final ImmutableMap.Builder<String, Number> stat = ImmutableMap.builder();
+
+    for (String name : new String[]{"pitchMean", "pitchMedian", "pitchStdDev", "pitchMax", "pitchRange",
+       "pitchUpSlopeMedian", "pitchUpSlopeMean", "pitchDownSlopeMedian", "pitchDownSlopeMean",
+       "pitchUpFramesRatio", "pitchVoicedFramesRatio"}) {
+      stat.put(name, random.nextFloat() * 300);
+    }
+    stat.put("pitchPeaksNum", (long) random.nextInt(100));
+    for (String name : new String[]{"pitchPeaksMean", "pitchPeaksStdDev", "pitchPeaksRange",
+       "pitchPeaksDistMean", "pitchPeaksDistStdDev", "pitchPeaksDistRange", "pitchPeaksDistMin"}) {
+      stat.put(name, random.nextBoolean() ? random.nextDouble() * 300 : Double.NaN);
+    }
+    for (String name : new String[]{"energyMean", "energyMedian", "energyStdDev", "energyMax", "energyRange",
+       "energyUpSlopeMedian", "energyDownSlopeMedian", "energyUpFramesRatio"}) {
+      stat.put(name, random.nextFloat() * 1e-3f);
+    }
+
+    final Map<Float, List<Float>> bandsEnergies = new HashMap<>();
+    for (Pair<Float, Float> band : FREQUENCY_BANDS) {
+      bandsEnergies.put(band.first, new ArrayList<>());
+    }
+    for (Map.Entry<Float, List<Float>> bandEnergies : bandsEnergies.entrySet()) {
+      final String prefix = "band" + bandEnergies.getKey() + '_';
+      for (String name : new String[]{"energyMean", "energyMedian", "energyStdDev", "energyMax", "energyRange",
+         "energyRatio"}) {
+        stat.put(prefix + name, random.nextFloat());
+      }
+    }
+
+    for (int i = 0; i < NUM_CEPSTRUM_COEF; ++i) {
+      final String prefix = "mfcc" + i + '_';
+      for (String name : new String[]{"mean", "median", "stdDev", "max", "range",
+         "derivMean", "derivMedian", "derivStdDev", "derivMax", "derivRange"}) {
+        stat.put(prefix + name, (random.nextFloat() - 0.5f) * 100);
+      }
+    }
+
+    return stat.build();
+  }
+
+  private static void printWithEmotion(PrintStream out, ImmutableMap<String, Number> stats, String fileName) {
+    // remove extension
+    if (fileName.contains(".")) {
+      fileName = fileName.substring(0, fileName.indexOf("."));
+    }
+
+    final Pair<String, String> emotion = EMOTION_MAPPER.get(fileName);
+    if (emotion == null) {
+      return;
+    }
+
+    stats.forEach((desc, stat) -> out.print(stat + ","));
+    out.print(fileName + ",");
+    out.print(emotion.first + ",");
+    out.print(emotion.second);
+  }
+
+  /**
+   * @return the statistics in the order of {@link FeatureSchema#COLUMNS}
+   */
+  private static Number[] values(ImmutableMap<String, Number> stats) {
+    assertEquals(FeatureSchema.COLUMNS.size(), stats.size());
+
+    final Number[] values = new Number[FeatureSchema.COLUMNS.size()];
+    stats.forEach((column, value) -> values[FeatureSchema.indexOf(column)] = value);
+    return values;
+  }
+}
@@ -0,0 +1,260 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Cyriaque Brousse
+ */
+public class FeatureCacheTest {
+
+  private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+  private FeatureCache cache;
+
+  /** Number of extractions run on a miss */
+  private final AtomicInteger extractions = new AtomicInteger();
+
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.newFolder("cache");
+    cache = new FeatureCache(directory, Long.MAX_VALUE, MAX_AGE_MILLIS);
+  }
+
+  @Test
+  public void hit() throws Exception {
+    final HashCode content = cache.hash(voiceFile("a.wav", 1));
+    final List<BlockStat> blocks = cache.get(content, extraction(blocks(3)));
+    final List<BlockStat> cached = cache.get(content, extraction(blocks(4)));
+
+    assertEquals(1, extractions.get());
+    assertBlocksEqual(blocks, cached);
+
+    final FeatureCache.FirstPass firstPass = cache.getFirstPass(content, firstPass(120f));
+    final FeatureCache.FirstPass cachedFirstPass = cache.getFirstPass(content, firstPass(80f));
+    assertEquals(2, extractions.get());
+    assertEquals(firstPass.pitchMean, cachedFirstPass.pitchMean, 0f);
+    assertArrayEquals(firstPass.firstLastSpokenFrames, cachedFirstPass.firstLastSpokenFrames);
+  }
+
+  @Test
+  public void renamedFileHits() throws Exception {
+    cache.get(cache.hash(voiceFile("a.wav", 1)), extraction(blocks(3)));
+    cache.get(cache.hash(voiceFile("b.wav", 1)), extraction(blocks(3)));
+
+    assertEquals(1, extractions.get());
+  }
+
+  @Test
+  public void miss() throws Exception {
+    cache.get(cache.hash(voiceFile("a.wav", 1)), extraction(blocks(3)));
+    final List<BlockStat> blocks = cache.get(cache.hash(voiceFile("b.wav", 2)), extraction(blocks(2)));
+
+    assertEquals(2, extractions.get());
+    assertEquals(2, blocks.size());
+  }
+
+  @Test
+  public void parametersInvalidate() throws Exception {
+    final HashCode content = cache.hash(voiceFile("a.wav", 1));
+    final byte[] parameters = FeatureCache.BLOCKS_PARAMETERS.clone();
+    parameters[0] ^= 1;
+
+    cache.get(content, FeatureCache.BLOCKS_PARAMETERS, extraction(blocks(3)));
+    final List<BlockStat> blocks = cache.get(content, parameters, extraction(blocks(2)));
+    assertEquals(2, extractions.get());
+    assertEquals(2, blocks.size());
+
+    // both entries are kept
+    cache.get(content, FeatureCache.BLOCKS_PARAMETERS, extraction(blocks(1)));
+    cache.get(content, parameters, extraction(blocks(1)));
+    assertEquals(2, extractions.get());
+
+    assertFalse(Arrays.equals(FeatureCache.BLOCKS_PARAMETERS, FeatureCache.FIRST_PASS_PARAMETERS));
+  }
+
+  @Test
+  public void contentHashIsIndexed() throws Exception {
+    final File file = voiceFile("a.wav", 1);
+    final HashCode content = cache.hash(file);
+    assertEquals(Hashing.sha256().hashBytes(Files.readAllBytes(file.toPath())), content);
+
+    // same path, size and modification time: the file is not read again
+    final long lastModified = file.lastModified();
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    bytes[0] ^= 1;
+    Files.write(file.toPath(), bytes);
+    assertTrue(file.setLastModified(lastModified));
+    assertEquals(content, cache.hash(file));
+
+    // modified: hashed again
+    assertTrue(file.setLastModified(lastModified + TimeUnit.SECONDS.toMillis(10)));
+    assertEquals(Hashing.sha256().hashBytes(bytes), cache.hash(file));
+  }
+
+  @Test
+  public void corruptEntryIsDropped() throws Exception {
+    final HashCode content = HashCode.fromInt(1);
+    cache.get(content, extraction(blocks(3)));
+
+    final File entry = onlyEntry();
+    final byte[] bytes = Files.readAllBytes(entry.toPath());
+    Files.write(entry.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+    assertEquals(2, cache.get(content, extraction(blocks(2))).size());
+    assertEquals(2, extractions.get());
+
+    // rewritten
+    assertEquals(2, cache.get(content, extraction(blocks(1))).size());
+    assertEquals(2, extractions.get());
+  }
+
+  @Test
+  public void oldVersionEntryIsDropped() throws Exception {
+    final HashCode content = HashCode.fromInt(1);
+    cache.getFirstPass(content, firstPass(120f));
+
+    final File entry = onlyEntry();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(entry))) {
+      out.writeInt(FeatureCache.FIRST_PASS_MAGIC);
+      out.writeInt(FeatureCache.VERSION - 1);
+      out.writeFloat(80f);
+      out.writeInt(0);
+      out.writeInt(10);
+    }
+
+    assertEquals(120f, cache.getFirstPass(content, firstPass(120f)).pitchMean, 0f);
+    assertEquals(2, extractions.get());
+  }
+
+  @Test
+  public void evictOld() throws Exception {
+    final HashCode content = HashCode.fromInt(1);
+    cache.getFirstPass(content, firstPass(120f));
+    final File entry = onlyEntry();
+
+    assertTrue(entry.setLastModified(System.currentTimeMillis() - 2 * MAX_AGE_MILLIS));
+    cache.evict();
+    assertFalse(entry.exists());
+
+    cache.getFirstPass(content, firstPass(120f));
+    assertEquals(2, extractions.get());
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() throws Exception {
+    final HashCode[] contents = {HashCode.fromInt(1), HashCode.fromInt(2), HashCode.fromInt(3)};
+    final File[] entries = new File[contents.length];
+    final long now = System.currentTimeMillis();
+
+    // written in order, each one last used a minute after the previous one
+    for (int i = 0; i < contents.length; i++) {
+      cache.getFirstPass(contents[i], firstPass(100f + i));
+      entries[i] = newestEntry();
+      assertTrue(entries[i].setLastModified(now - TimeUnit.MINUTES.toMillis(10 - i)));
+    }
+
+    // the first entry is used again, so that the second one is now the least recently used
+    cache.getFirstPass(contents[0], firstPass(0f));
+    assertEquals(3, extractions.get());
+
+    new FeatureCache(directory, 2 * entries[0].length(), MAX_AGE_MILLIS).evict();
+    assertTrue(entries[0].exists());
+    assertFalse(entries[1].exists());
+    assertTrue(entries[2].exists());
+  }
+
+  /* **********************************
+                   Helpers
+     ********************************** */
+
+  private File voiceFile(String name, int seed) throws Exception {
+    final File file = folder.newFile(name);
+    final byte[] bytes = new byte[4096];
+    new Random(seed).nextBytes(bytes);
+    Files.write(file.toPath(), bytes);
+    return file;
+  }
+
+  private <T> Callable<T> extraction(T value) {
+    return () -> {
+      extractions.incrementAndGet();
+      return value;
+    };
+  }
+
+  private Callable<FeatureCache.FirstPass> firstPass(float pitchMean) {
+    return extraction(new FeatureCache.FirstPass(pitchMean, new int[]{3, 42}));
+  }
+
+  /**
+   * @return blocks holding values of all the types of the extracted statistics
+   */
+  private static List<BlockStat> blocks(int count) {
+    final BlockStat[] blocks = new BlockStat[count];
+    for (int b = 0; b < count; b++) {
+      final Number[] values = new Number[FeatureSchema.COLUMNS.size()];
+      for (int column = 0; column < values.length; column++) {
+        switch (column % 4) {
+          case 0:  values[column] = b + column / 7f;     break;
+          case 1:  values[column] = (long) column;       break;
+          case 2:  values[column] = b - column / 3.0;    break;
+          default: values[column] = Float.NaN;
+        }
+      }
+      blocks[b] = new BlockStat(b * 100L, values);
+    }
+    return Arrays.asList(blocks);
+  }
+
+  private static void assertBlocksEqual(List<BlockStat> expected, List<BlockStat> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int b = 0; b < expected.size(); b++) {
+      assertEquals(expected.get(b).startId, actual.get(b).startId);
+      // same values, of the same types, so that they are printed back identically
+      assertArrayEquals(expected.get(b).values, actual.get(b).values);
+    }
+  }
+
+  private File[] entries() {
+    return directory.listFiles((dir, name) -> name.endsWith(FeatureCache.ENTRY_EXTENSION));
+  }
+
+  private File onlyEntry() {
+    final File[] entries = entries();
+    assertEquals(1, entries.length);
+    return entries[0];
+  }
+
+  private File newestEntry() {
+    return Collections.max(Arrays.asList(entries()), Comparator.comparingLong(File::lastModified));
+  }
+}
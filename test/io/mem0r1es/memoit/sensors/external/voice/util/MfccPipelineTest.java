@@ -0,0 +1,181 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.mem0r1es.memoit.sensors.external.voice.SyntheticSignals;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static io.mem0r1es.memoit.sensors.external.voice.util.MfccPipeline.NUM_CEPSTRUM_COEF;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the {@link MfccPipeline}, with its precomputed mel weights and DCT matrix, yields bit-for-bit
+ * the same coefficients as the former direct evaluation of the mel filters and of the DCT, reproduced below.
+ * Both are given the same magnitude spectrum, that of {@link MfccPipeline#getMagnitudeSpectrum()}.
+ * <p>
+ * Runs on random frames of various amplitudes, then on the frames of the synthetic signals.
+ *
+ * @author Cyriaque Brousse
+ */
+public class MfccPipelineTest {
+
+  /** Number of random frames */
+  private static final int FRAMES = 20_000;
+
+  /** Seed of the frame generator, so that all runs see the same frames */
+  private static final long SEED = 3L;
+
+  /** Amplitudes of the random frames, down to the floor of the log */
+  private static final double[] AMPLITUDES = {1e-6, 1e-3, 0.3, 1.0};
+
+  /** Duration of the synthetic signals (s) */
+  private static final int SECONDS = 5;
+
+  private static final int NUM_MEL_FILTERS = 30;
+  private static final float MFCC_LOWER_FILTER_FREQ = 133.3334f;
+  private static final float MFCC_UPPER_FILTER_FREQ = SAMPLING_RATE / 2f;
+
+  private static final int[] CENTER_FREQUENCIES = initCenterFrequencies();
+
+  private final MfccPipeline pipeline = new MfccPipeline();
+  private final float[] frame = new float[FRAME_SIZE];
+  private final float[] coefficients = new float[NUM_CEPSTRUM_COEF];
+
+  @Test
+  public void randomFrames() {
+    long mismatches = 0L;
+
+    final Random random = new Random(SEED);
+    for (int f = 0; f < FRAMES; f++) {
+      final double amplitude = AMPLITUDES[f % AMPLITUDES.length];
+      for (int i = 0; i < FRAME_SIZE; i++) {
+        frame[i] = (float) (amplitude * random.nextGaussian());
+      }
+      mismatches += compare();
+    }
+
+    assertEquals("coefficients differing", 0L, mismatches);
+  }
+
+  @Test
+  public void syntheticSignals() {
+    for (SyntheticSignals.Kind kind : SyntheticSignals.Kind.values()) {
+      long mismatches = 0L;
+
+      final float[] samples = SyntheticSignals.generate(kind, SECONDS);
+      for (int offset = 0; offset + FRAME_SIZE <= samples.length; offset += FRAME_SIZE) {
+        System.arraycopy(samples, offset, frame, 0, FRAME_SIZE);
+        mismatches += compare();
+      }
+
+      assertEquals(kind + " coefficients differing", 0L, mismatches);
+    }
+  }
+
+  /**
+   * @return the number of coefficients of the frame that are not bit-for-bit identical
+   */
+  private int compare() {
+    pipeline.process(frame, coefficients);
+    final float[] expected = cepstralCoefficients(nonLinearTransformation(melFilter(pipeline.getMagnitudeSpectrum())));
+
+    int mismatches = 0;
+    for (int i = 0; i < NUM_CEPSTRUM_COEF; i++) {
+      if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(coefficients[i])) {
+        mismatches++;
+      }
+    }
+    return mismatches;
+  }
+
+  /* **********************************
+            Former direct evaluation
+     ********************************** */
+
+  private static int[] initCenterFrequencies() {
+    final int[] centerFrequencies = new int[NUM_MEL_FILTERS + 2];
+    centerFrequencies[0] = Math.round(MFCC_LOWER_FILTER_FREQ / SAMPLING_RATE * FRAME_SIZE);
+    centerFrequencies[centerFrequencies.length - 1] = FRAME_SIZE / 2;
+
+    double mel[] = new double[2];
+    mel[0] = freqToMel(MFCC_LOWER_FILTER_FREQ);
+    mel[1] = freqToMel(MFCC_UPPER_FILTER_FREQ);
+
+    float factor = (float) ((mel[1] - mel[0]) / (NUM_MEL_FILTERS + 1));
+    for (int i = 1; i <= NUM_MEL_FILTERS; i++) {
+      float fc = (inverseMel(mel[0] + factor * i) / SAMPLING_RATE) * FRAME_SIZE;
+      centerFrequencies[i - 1] = Math.round(fc);
+    }
+
+    return centerFrequencies;
+  }
+
+  private static float freqToMel(float freq) {
+    return (float) (2595 * Math.log10(1 + freq / 700));
+  }
+
+  private static float inverseMel(double x) {
+    return (float) (700 * (Math.pow(10, x / 2595) - 1));
+  }
+
+  private static float[] melFilter(float bin[]) {
+    final int[] cf = CENTER_FREQUENCIES;
+    float temp[] = new float[NUM_MEL_FILTERS + 2];
+
+    for (int k = 1; k <= NUM_MEL_FILTERS; k++) {
+      float num1 = 0;
+      float num2 = 0;
+
+      float den = (cf[k] - cf[k - 1] + 1);
+
+      for (int i = cf[k - 1]; i <= cf[k]; i++) {
+        num1 += bin[i] * (i - cf[k - 1] + 1);
+      }
+      num1 /= den;
+
+      den = (cf[k + 1] - cf[k] + 1);
+
+      for (int i = cf[k] + 1; i <= cf[k + 1]; i++) {
+        num2 += bin[i] * (1 - ((i - cf[k]) / den));
+      }
+
+      temp[k] = num1 + num2;
+    }
+
+    float bank[] = new float[NUM_MEL_FILTERS];
+    for (int i = 0; i < NUM_MEL_FILTERS; i++) {
+      bank[i] = temp[i + 1];
+    }
+
+    return bank;
+  }
+
+  private static float[] nonLinearTransformation(float bank[]) {
+    float f[] = new float[bank.length];
+    final float floor = -50f;
+
+    for (int i = 0; i < bank.length; i++) {
+      f[i] = (float) Math.log(bank[i]);
+      if (f[i] < floor) {
+        f[i] = floor;
+      }
+    }
+
+    return f;
+  }
+
+  private static float[] cepstralCoefficients(float[] transformation) {
+    float coefficients[] = new float[NUM_CEPSTRUM_COEF];
+
+    for (int i = 0; i < coefficients.length; i++) {
+      for (int j = 0; j < transformation.length; j++) {
+        coefficients[i] += transformation[j] * Math.cos(Math.PI * i / transformation.length * (j + 0.5));
+      }
+    }
+
+    return coefficients;
+  }
+}
@@ -0,0 +1,92 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.junit.Test;
+
+import static io.mem0r1es.memoit.sensors.external.voice.util.SeriesStatTest.STREAMING_RANK_TOLERANCE;
+import static io.mem0r1es.memoit.sensors.external.voice.util.SeriesStatTest.rankError;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Cyriaque Brousse
+ */
+public class QuantileSketchTest {
+
+  private static final double[] PERCENTILES = {0.5, 10, 25, 50, 75, 90, 99, 100};
+
+  @Test
+  public void emptyIsNaN() {
+    assertEquals(Double.NaN, new QuantileSketch(50).get(), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroPercentile() {
+    new QuantileSketch(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPercentileAboveHundred() {
+    new QuantileSketch(100.5);
+  }
+
+  @Test
+  public void exactUpToFiveValues() {
+    final Random random = new Random(1L);
+    for (int length = 1; length <= 5; length++) {
+      for (int trial = 0; trial < 100; trial++) {
+        final double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+          values[i] = random.nextGaussian();
+        }
+
+        for (double percentile : PERCENTILES) {
+          final QuantileSketch sketch = new QuantileSketch(percentile);
+          for (double value : values) {
+            sketch.add(value);
+          }
+          assertEquals(length + " values, percentile " + percentile,
+             new Percentile(percentile).evaluate(values), sketch.get(), 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void constantSeries() {
+    for (double percentile : PERCENTILES) {
+      final QuantileSketch sketch = new QuantileSketch(percentile);
+      for (int i = 0; i < 1_000; i++) {
+        sketch.add(42.0);
+      }
+      assertEquals(42.0, sketch.get(), 0.0);
+    }
+  }
+
+  @Test
+  public void sortedSeriesWithinBounds() {
+    final double[] values = new double[2_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    final double[] reversed = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      reversed[i] = values[values.length - 1 - i];
+    }
+
+    for (double[] series : Arrays.asList(values, reversed)) {
+      for (double percentile : PERCENTILES) {
+        final QuantileSketch sketch = new QuantileSketch(percentile);
+        for (double value : series) {
+          sketch.add(value);
+        }
+        final double rankError = rankError(series, percentile, sketch.get());
+        assertTrue("percentile " + percentile + " off by " + rankError + " points",
+           rankError <= STREAMING_RANK_TOLERANCE);
+      }
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.mem0r1es.memoit.sensors.external.voice.SyntheticSignals;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Cyriaque Brousse
+ */
+public class SampleBufferTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void decodedLengthExcludesPadding() throws Exception {
+    final float[] voice = SyntheticSignals.generate(SyntheticSignals.Kind.VOICE, 1);
+
+    // one file shorter than a frame, one whole number of frames, one with a partial last frame
+    for (int length : new int[]{FRAME_SIZE / 3, 4 * FRAME_SIZE, SAMPLING_RATE / 2 + 7}) {
+      final File file = folder.newFile();
+      SyntheticSignals.writeWav(Arrays.copyOf(voice, length), file);
+
+      assertEquals(length, SampleBuffer.decode(file).length());
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link SeriesStat.Mode#EXACT} gives the statistics of a {@link DescriptiveStatistics},
+ * and bounds the error of {@link SeriesStat.Mode#STREAMING}.
+ *
+ * @author Cyriaque Brousse
+ */
+public class SeriesStatTest {
+
+  /** Percentiles queried by the block statistics, and a few others */
+  private static final double[] PERCENTILES = {0.5, 10, 25, 50, 75, 90, 99};
+
+  /** Number of random series per distribution */
+  private static final int SERIES = 50;
+
+  /** Largest relative difference of the streaming mean and standard deviation with the exact ones */
+  private static final double STREAMING_MOMENT_TOLERANCE = 1e-9;
+
+  /**
+   * Largest difference between the requested percentile and the rank of the streaming estimate among the values,
+   * in percentage points
+   */
+  static final double STREAMING_RANK_TOLERANCE = 5.0;
+
+  @Test
+  public void exactEmpty() {
+    final SeriesStat stat = new SeriesStat(SeriesStat.Mode.EXACT);
+
+    assertEquals(0L, stat.getN());
+    assertEquals(Double.NaN, stat.getMean(), 0.0);
+    assertEquals(Double.NaN, stat.getStandardDeviation(), 0.0);
+    assertEquals(Double.NaN, stat.getMax(), 0.0);
+    assertEquals(Double.NaN, stat.getMin(), 0.0);
+    assertEquals(Double.NaN, stat.getPercentile(50), 0.0);
+  }
+
+  @Test
+  public void exactSameAsDescriptiveStatistics() {
+    for (Distribution distribution : Distribution.values()) {
+      final Random random = new Random(distribution.ordinal());
+      for (int s = 0; s < SERIES; s++) {
+        final int length = 1 + random.nextInt(s < 10 ? 10 : 5_000);
+
+        final SeriesStat stat = new SeriesStat(SeriesStat.Mode.EXACT);
+        final DescriptiveStatistics expected = new DescriptiveStatistics();
+        for (int i = 0; i < length; i++) {
+          final float value = distribution.next(random, i);
+          stat.add(value);
+          expected.addValue(value);
+        }
+
+        final String label = distribution + " series " + s;
+        assertEquals(label, expected.getN(), stat.getN());
+        assertEquals(label, expected.getMean(), stat.getMean(), 0.0);
+        assertEquals(label, expected.getStandardDeviation(), stat.getStandardDeviation(), 0.0);
+        assertEquals(label, expected.getMax(), stat.getMax(), 0.0);
+        assertEquals(label, expected.getMin(), stat.getMin(), 0.0);
+        for (double percentile : PERCENTILES) {
+          assertEquals(label + " percentile " + percentile,
+             expected.getPercentile(percentile), stat.getPercentile(percentile), 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void streamingEmpty() {
+    final SeriesStat stat = new SeriesStat(SeriesStat.Mode.STREAMING, 50);
+
+    assertEquals(0L, stat.getN());
+    assertEquals(Double.NaN, stat.getMean(), 0.0);
+    assertEquals(Double.NaN, stat.getStandardDeviation(), 0.0);
+    assertEquals(Double.NaN, stat.getMax(), 0.0);
+    assertEquals(Double.NaN, stat.getMin(), 0.0);
+    assertEquals(Double.NaN, stat.getPercentile(50), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void streamingUndeclaredPercentile() {
+    new SeriesStat(SeriesStat.Mode.STREAMING, 50).getPercentile(25);
+  }
+
+  @Test
+  public void streamingWithinBounds() {
+    for (Distribution distribution : Distribution.values()) {
+      final Random random = new Random(distribution.ordinal());
+      for (int s = 0; s < SERIES; s++) {
+        final int length = 200 + random.nextInt(5_000);
+
+        final SeriesStat exact = new SeriesStat(SeriesStat.Mode.EXACT);
+        final SeriesStat streaming = new SeriesStat(SeriesStat.Mode.STREAMING, PERCENTILES);
+        for (int i = 0; i < length; i++) {
+          final float value = distribution.next(random, i);
+          exact.add(value);
+          streaming.add(value);
+        }
+
+        final String label = distribution + " series " + s;
+        assertEquals(label, exact.getN(), streaming.getN());
+        assertEquals(label, exact.getMax(), streaming.getMax(), 0.0);
+        assertEquals(label, exact.getMin(), streaming.getMin(), 0.0);
+        assertEquals(label, exact.getMean(), streaming.getMean(),
+           STREAMING_MOMENT_TOLERANCE * Math.abs(exact.getMean()));
+        assertEquals(label, exact.getStandardDeviation(), streaming.getStandardDeviation(),
+           STREAMING_MOMENT_TOLERANCE * exact.getStandardDeviation());
+
+        for (double percentile : PERCENTILES) {
+          final double rankError = rankError(exact.doubleValues(), percentile, streaming.getPercentile(percentile));
+          assertTrue(label + " percentile " + percentile + " off by " + rankError + " points",
+             rankError <= STREAMING_RANK_TOLERANCE);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the distance, in percentage points, between the percentile and the range of ranks of the estimate
+   *         among the values
+   */
+  static double rankError(double[] values, double percentile, double estimate) {
+    int below = 0;
+    int belowOrEqual = 0;
+    for (double value : values) {
+      if (value < estimate) {
+        below++;
+      }
+      if (value <= estimate) {
+        belowOrEqual++;
+      }
+    }
+
+    final double lowest = 100.0 * below / values.length;
+    final double highest = 100.0 * belowOrEqual / values.length;
+    return percentile < lowest ? lowest - percentile : percentile > highest ? percentile - highest : 0.0;
+  }
+
+  /**
+   * Distributions of the random series
+   */
+  enum Distribution {
+    GAUSSIAN,
+    UNIFORM,
+    EXPONENTIAL,
+    /** Gliding pitch contour (Hz) with jitter */
+    PITCH;
+
+    float next(Random random, int index) {
+      switch (this) {
+        case GAUSSIAN:
+          return (float) random.nextGaussian();
+        case UNIFORM:
+          return random.nextFloat();
+        case EXPONENTIAL:
+          return (float) -Math.log(1 - random.nextDouble());
+        default:
+          return (float) (150 + 30 * Math.sin(index * 0.05) + 3 * random.nextGaussian());
+      }
+    }
+  }
+}
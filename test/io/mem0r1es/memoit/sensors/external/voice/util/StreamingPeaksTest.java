@@ -0,0 +1,108 @@
+package io.mem0r1es.memoit.sensors.external.voice.util;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.FRAME_SIZE;
+import static io.mem0r1es.memoit.sensors.external.voice.CallRecorder.SAMPLING_RATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Cyriaque Brousse
+ */
+public class StreamingPeaksTest {
+
+  /** Minimal distance of a peak to the mean, as for the pitch */
+  private static final float THRESHOLD = 10f;
+
+  /** Number of random pitch contours compared with the exact peak detection */
+  private static final int CONTOURS = 100;
+
+  /**
+   * Largest difference of the streaming peak count with the exact one, relative to the latter, plus an absolute
+   * margin. The running mean is off at the start of a block, where peaks close to it are missed.
+   */
+  private static final double COUNT_RELATIVE_TOLERANCE = 0.3;
+  private static final int COUNT_ABSOLUTE_TOLERANCE = 2;
+
+  private final SeriesStat series = new SeriesStat(SeriesStat.Mode.STREAMING);
+  private final StreamingPeaks peaks = new StreamingPeaks(series, THRESHOLD);
+
+  @Test
+  public void isolatedSpikes() {
+    for (int i = 0; i < 100; i++) {
+      add(i == 20 || i == 50 || i == 80 ? 150f : 100f);
+    }
+    peaks.flush();
+
+    assertEquals(3L, peaks.values.getN());
+    assertEquals(150.0, peaks.values.getMean(), 0.0);
+    assertEquals(2L, peaks.distances.getN());
+    assertEquals((double) 30 * FRAME_SIZE / SAMPLING_RATE, peaks.distances.getMean(), 1e-6);
+  }
+
+  @Test
+  public void plateauCountedOnce() {
+    for (float value : new float[]{100f, 100f, 100f, 150f, 150f, 150f, 100f, 100f, 100f}) {
+      add(value);
+    }
+    peaks.flush();
+
+    assertEquals(1L, peaks.values.getN());
+  }
+
+  @Test
+  public void closeToMeanIgnored() {
+    for (int i = 0; i < 100; i++) {
+      add(i % 10 == 5 ? 105f : 100f);
+    }
+    peaks.flush();
+
+    assertEquals(0L, peaks.values.getN());
+  }
+
+  @Test
+  public void lastValueNeedsFlush() {
+    for (int i = 0; i < 20; i++) {
+      add(100f);
+    }
+    add(150f);
+    assertEquals(0L, peaks.values.getN());
+
+    peaks.flush();
+    assertEquals(1L, peaks.values.getN());
+  }
+
+  @Test
+  public void countsCloseToExact() {
+    final Random random = new Random(7L);
+    for (int c = 0; c < CONTOURS; c++) {
+      final int length = 500 + random.nextInt(3_000);
+      final double base = 100 + 150 * random.nextDouble();
+      final double depth = 10 + 40 * random.nextDouble();
+      final double rate = 0.2 + 3 * random.nextDouble();
+      final double jitter = 8 * random.nextDouble();
+
+      final BlockStat.Builder exact = new BlockStat.Builder(0, length, SeriesStat.Mode.EXACT);
+      final BlockStat.Builder streaming = new BlockStat.Builder(0, length, SeriesStat.Mode.STREAMING);
+      for (int i = 0; i < length; i++) {
+        final float pitch = (float) (base + depth * Math.sin(2 * Math.PI * rate * i * FRAME_SIZE / SAMPLING_RATE)
+           + jitter * random.nextGaussian());
+        exact.addPitch(pitch);
+        streaming.addPitch(pitch);
+      }
+
+      final long expected = exact.build().get("pitchPeaksNum").longValue();
+      final long actual = streaming.build().get("pitchPeaksNum").longValue();
+      assertTrue("contour " + c + ": " + actual + " peaks instead of " + expected,
+         Math.abs(actual - expected) <= COUNT_RELATIVE_TOLERANCE * expected + COUNT_ABSOLUTE_TOLERANCE);
+    }
+  }
+
+  private void add(float value) {
+    series.add(value);
+    peaks.add(value);
+  }
+}